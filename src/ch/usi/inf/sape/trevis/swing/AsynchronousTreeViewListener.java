@@ -0,0 +1,130 @@
+/*
+ * This file is licensed to You under the "Simplified BSD License".
+ * You may not use this software except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.opensource.org/licenses/bsd-license.php
+ *
+ * See the COPYRIGHT file distributed with this work for information
+ * regarding copyright ownership.
+ */
+package ch.usi.inf.sape.trevis.swing;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+
+/**
+ * Forwards the events of a TreeView to a TreeViewListener on a background thread,
+ * so a slow listener does not block the event dispatch thread (and thus the next frame).
+ * 
+ * Each asynchronous listener has its own queue of events, drained by one task at a time
+ * on a pool shared by all asynchronous listeners.
+ * So each listener gets its events in the order in which they happened
+ * (rendererChanged, treeChanged, and topNodeChanged are delivered exactly once each),
+ * but a slow listener does not delay the events of the other listeners.
+ * currentNodeChanged is coalesced: while one is waiting for delivery, further ones are dropped.
+ * The listener has to read the current node from the TreeView (getCurrent()) when it gets notified,
+ * and will then see the latest value. After the last change, it always gets notified at least once.
+ * 
+ * The listener runs outside the event dispatch thread,
+ * so it has to use SwingUtilities.invokeLater() to update Swing components.
+ */
+final class AsynchronousTreeViewListener implements TreeViewListener {
+
+	private static final Executor EXECUTOR = Executors.newCachedThreadPool(new DaemonThreadFactory("TreeView listener dispatch")); // shared by all asynchronous listeners
+	
+	private final TreeViewListener delegate;
+	private final AtomicBoolean currentNodeChangePending;
+	private final ConcurrentLinkedQueue<Runnable> events; // not yet delivered to the delegate
+	private final AtomicBoolean draining; // whether a task delivering the events is scheduled or running
+	private final Runnable drain;
+	
+	
+	public AsynchronousTreeViewListener(final TreeViewListener delegate) {
+		this.delegate = delegate;
+		currentNodeChangePending = new AtomicBoolean();
+		events = new ConcurrentLinkedQueue<Runnable>();
+		draining = new AtomicBoolean();
+		drain = new Runnable() {
+			public void run() {
+				drain();
+			}
+		};
+	}
+	
+	public TreeViewListener getDelegate() {
+		return delegate;
+	}
+	
+	/**
+	 * Queue an event for the delegate, and make sure a task delivers it.
+	 */
+	private void post(final Runnable event) {
+		events.add(event);
+		if (draining.compareAndSet(false, true)) {
+			EXECUTOR.execute(drain);
+		}
+	}
+	
+	/**
+	 * Deliver the queued events, one at a time, until the queue is empty.
+	 */
+	private void drain() {
+		while (true) {
+			Runnable event = events.poll();
+			while (event!=null) {
+				try {
+					event.run();
+				} catch (final RuntimeException ex) {
+					ex.printStackTrace();
+				}
+				event = events.poll();
+			}
+			draining.set(false);
+			// an event posted after the last poll, but before clearing the flag, would otherwise be stranded
+			if (events.isEmpty() || !draining.compareAndSet(false, true)) {
+				return;
+			}
+		}
+	}
+	
+	public void rendererChanged(final TreeView view) {
+		post(new Runnable() {
+			public void run() {
+				delegate.rendererChanged(view);
+			}
+		});
+	}
+	
+	public void treeChanged(final TreeView view) {
+		post(new Runnable() {
+			public void run() {
+				delegate.treeChanged(view);
+			}
+		});
+	}
+	
+	public void topNodeChanged(final TreeView view) {
+		post(new Runnable() {
+			public void run() {
+				delegate.topNodeChanged(view);
+			}
+		});
+	}
+	
+	public void currentNodeChanged(final TreeView view) {
+		if (currentNodeChangePending.compareAndSet(false, true)) {
+			post(new Runnable() {
+				public void run() {
+					// clear first, so a change happening while the delegate runs gets delivered, too
+					currentNodeChangePending.set(false);
+					delegate.currentNodeChanged(view);
+				}
+			});
+		}
+	}
+	
+}
@@ -0,0 +1,203 @@
+/*
+ * This file is licensed to You under the "Simplified BSD License".
+ * You may not use this software except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.opensource.org/licenses/bsd-license.php
+ *
+ * See the COPYRIGHT file distributed with this work for information
+ * regarding copyright ownership.
+ */
+package ch.usi.inf.sape.trevis.swing;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+import ch.usi.inf.sape.trevis.model.ContextTreeNode;
+import ch.usi.inf.sape.trevis.model.attribute.LongAttribute;
+
+
+/**
+ * The maxima of LongAttributes over the tree shown in a TreeView,
+ * used to normalize saturations and heights.
+ * 
+ * A maximum is computed on first use and cached until the root changes.
+ * When the values of some nodes change in place (see update()), the cached maxima get updated
+ * from those nodes only, unless the node holding a maximum decreased.
+ * prewarm() computes the maxima of attributes the user may switch to (e.g., all available saturations)
+ * on low-priority background threads, so that switching is instant.
+ * Evaluating an attribute on every node also warms any caches the attribute keeps itself.
+ * Background evaluation requires the tree not to be modified while it is shown.
+ */
+final class AttributeStatistics {
+
+	// shared by all TreeViews
+	private static final Executor EXECUTOR = Executors.newFixedThreadPool(Math.max(1, Runtime.getRuntime().availableProcessors()-1),
+			new DaemonThreadFactory("TreeView attribute prewarming", Thread.MIN_PRIORITY));
+	
+	private volatile Maxima maxima;
+	
+	
+	/**
+	 * The maxima for one root.
+	 * Replaced as a whole when the root (or a value) changes, so late background results for the old state get dropped.
+	 */
+	private static final class Maxima {
+		private final ContextTreeNode root;
+		private final ConcurrentHashMap<LongAttribute, Maximum> values;
+		
+		public Maxima(final ContextTreeNode root) {
+			this.root = root;
+			values = new ConcurrentHashMap<LongAttribute, Maximum>();
+		}
+	}
+	
+	/**
+	 * The maximum value of an attribute, and a node that has it (null if not known).
+	 */
+	private static final class Maximum {
+		private final long value;
+		private final ContextTreeNode node;
+		
+		public Maximum(final long value, final ContextTreeNode node) {
+			this.value = value;
+			this.node = node;
+		}
+	}
+	
+	
+	public AttributeStatistics() {
+		maxima = new Maxima(null);
+	}
+	
+	public void setRoot(final ContextTreeNode root) {
+		maxima = new Maxima(root);
+	}
+	
+	/**
+	 * The tree got replaced by a newer version of it (with the given root),
+	 * in which only the given nodes are new or changed, and no value decreased.
+	 * Update the maxima computed so far by evaluating the changed nodes only.
+	 */
+	public void grow(final ContextTreeNode root, final Collection<ContextTreeNode> changedNodes) {
+		final Maxima old = maxima;
+		final Maxima m = new Maxima(root);
+		if (old.root!=null) {
+			for (final Map.Entry<LongAttribute, Maximum> entry : old.values.entrySet()) {
+				final LongAttribute attribute = entry.getKey();
+				long max = entry.getValue().value;
+				ContextTreeNode maxNode = null; // the old node is not part of the new version
+				for (final ContextTreeNode node : changedNodes) {
+					final long value = attribute.evaluate(node);
+					if (value>max || (value==max && maxNode==null)) {
+						max = value;
+						maxNode = node;
+					}
+				}
+				m.values.put(attribute, new Maximum(max, maxNode));
+			}
+		}
+		maxima = m;
+	}
+	
+	/**
+	 * The values of the given nodes changed in place (the root and the structure of the tree did not).
+	 * The given nodes have to include all nodes whose values changed
+	 * (for inclusive attributes, this includes the ancestors of the nodes that changed).
+	 * Updates the maxima computed so far by evaluating the given nodes only.
+	 * A maximum that may have decreased (because the node holding it changed, and now is smaller)
+	 * gets dropped, and recomputed over the whole tree when needed next.
+	 * Returns whether any maximum changed (or got dropped).
+	 */
+	public boolean update(final Set<ContextTreeNode> changedNodes) {
+		final Maxima old = maxima;
+		final Maxima m = new Maxima(old.root);
+		boolean changed = false;
+		for (final Map.Entry<LongAttribute, Maximum> entry : old.values.entrySet()) {
+			final LongAttribute attribute = entry.getKey();
+			final Maximum maximum = entry.getValue();
+			if (maximum.node==null || (changedNodes.contains(maximum.node) && attribute.evaluate(maximum.node)<maximum.value)) {
+				changed = true;
+				continue;
+			}
+			long max = maximum.value;
+			ContextTreeNode maxNode = maximum.node;
+			for (final ContextTreeNode node : changedNodes) {
+				final long value = attribute.evaluate(node);
+				if (value>max) {
+					max = value;
+					maxNode = node;
+				}
+			}
+			changed |= max!=maximum.value;
+			m.values.put(attribute, new Maximum(max, maxNode));
+		}
+		maxima = m;
+		return changed;
+	}
+	
+	/**
+	 * Get the maximum value of the given attribute over all nodes of the tree
+	 * (Long.MIN_VALUE if there is no tree).
+	 * Computes it on the calling thread, unless it already has been computed.
+	 */
+	public long getMaximum(final LongAttribute attribute) {
+		final Maxima m = maxima;
+		if (m.root==null) {
+			return Long.MIN_VALUE;
+		}
+		Maximum max = m.values.get(attribute);
+		if (max==null) {
+			max = computeMaximum(attribute, m.root);
+			m.values.put(attribute, max);
+		}
+		return max.value;
+	}
+	
+	/**
+	 * Compute the maxima of the given attributes in the background.
+	 */
+	public void prewarm(final Collection<LongAttribute> attributes) {
+		final Maxima m = maxima;
+		if (m.root==null) {
+			return;
+		}
+		for (final LongAttribute attribute : attributes) {
+			if (!m.values.containsKey(attribute)) {
+				EXECUTOR.execute(new Runnable() {
+					public void run() {
+						if (maxima==m && !m.values.containsKey(attribute)) {
+							m.values.put(attribute, computeMaximum(attribute, m.root));
+						}
+					}
+				});
+			}
+		}
+	}
+	
+	private static Maximum computeMaximum(final LongAttribute attribute, final ContextTreeNode root) {
+		final TraversalStack stack = new TraversalStack();
+		long max = attribute.evaluate(root);
+		ContextTreeNode maxNode = root;
+		stack.push(root);
+		while (!stack.isEmpty()) {
+			final ContextTreeNode child = stack.nextChild();
+			if (child==null) {
+				stack.pop();
+			} else {
+				final long value = attribute.evaluate(child);
+				if (value>max) {
+					max = value;
+					maxNode = child;
+				}
+				stack.push(child);
+			}
+		}
+		return new Maximum(max, maxNode);
+	}
+	
+}
@@ -14,11 +14,14 @@ import java.awt.Color;
 import java.awt.FlowLayout;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
 import java.util.ArrayList;
+import java.util.Set;
 
-import javax.swing.JComponent;
 import javax.swing.JLabel;
 import javax.swing.JPanel;
+import javax.swing.ToolTipManager;
 import javax.swing.border.MatteBorder;
 
 import ch.usi.inf.sape.trevis.model.ContextTreeNode;
@@ -29,41 +32,46 @@ import ch.usi.inf.sape.util.Colors;
  * A BreadcrumbBar is a Swing component that visualizes the path to the top and the currently selected node in a TreeView.
  * Ideally, a BreadcrumbBar is placed right above the TreeView.
  * 
+ * The bar is updated incrementally: the Steps of the prefix shared by the old and the new path are kept,
+ * and only the differing suffix is removed and added.
+ * The middle of very long paths is elided, and the elision can be expanded by clicking on it.
+ * 
  * @author Matthias.Hauswirth@usi.ch
  */
 public final class BreadcrumbBar extends JPanel {
 
 	private static final Color COLOR = new Color(210, 210, 210);
+	private static final String STEP_SEPARATOR = "\u203A";
+	private static final String TOP_SEPARATOR = " \u2015 ";
+	private static final String ELISION = " \u2026 ";
+	private static final int HEAD_STEPS = 2; // steps shown before an elision
+	private static final int TAIL_STEPS = 6; // steps shown after an elision
 	
 	private final class Step extends JLabel {
 		
 		private final ContextTreeNode node;
 		private boolean containsMouse;
+		private Color color;
 		
 		
 		public Step(final ContextTreeNode node) {
 			this.node = node;
-			final String text = view.getLabelAttribute().evaluate(node);
-			setText(text);
-			final String tooltipText = view.getTooltipAttribute().evaluate(node);
-			setToolTipText(tooltipText);
 			setOpaque(true);
-			setBackground(Color.WHITE);
-			setForeground(new Color(Colors.hsbToRgb(view.getHsb(node, false))));
+			refresh();
+			// the tooltip is evaluated lazily, in getToolTipText(MouseEvent)
+			ToolTipManager.sharedInstance().registerComponent(this);
 			
 			// register listeners
 			addMouseListener(new MouseAdapter() {
 				@Override
 				public void mouseEntered(final MouseEvent ev) {
 					containsMouse = true;
-					setBackground(new Color(Colors.hsbToRgb(view.getHsb(node, false))));
-					setForeground(Color.WHITE);
+					updateColors();
 				}
 				@Override
 				public void mouseExited(final MouseEvent ev) {
 					containsMouse = false;
-					setBackground(Color.WHITE);
-					setForeground(new Color(Colors.hsbToRgb(view.getHsb(node, false))));
+					updateColors();
 				}
 				@Override
 				public void mouseClicked(final MouseEvent ev) {
@@ -74,9 +82,66 @@ public final class BreadcrumbBar extends JPanel {
 			});
 		}
 		
+		/**
+		 * Re-evaluate label and color (e.g., after a Configuration change).
+		 */
+		public void refresh() {
+			setText(view.getLabelAttribute().evaluate(node));
+			color = new Color(Colors.hsbToRgb(view.getHsb(node, false)));
+			updateColors();
+		}
+		
+		private void updateColors() {
+			setBackground(containsMouse?color:Color.WHITE);
+			setForeground(containsMouse?Color.WHITE:color);
+		}
+		
+		@Override
+		public String getToolTipText(final MouseEvent ev) {
+			return view.getTooltipAttribute().evaluate(node);
+		}
+		
+	}
+	
+	private final class Separator extends JLabel {
+		
+		private int elidedSteps; // 0 if this separator does not mark an elision
+		
+		
+		public Separator() {
+			setForeground(COLOR);
+			setText(STEP_SEPARATOR);
+			
+			// register listeners
+			addMouseListener(new MouseAdapter() {
+				@Override
+				public void mouseClicked(final MouseEvent ev) {
+					if (elidedSteps>0) {
+						expanded = !expanded;
+						updateSeparators();
+					}
+				}
+			});
+		}
+		
+		public void setSeparator(final String text, final int elidedSteps) {
+			this.elidedSteps = elidedSteps;
+			setText(text);
+			if (elidedSteps>0) {
+				setToolTipText(expanded?"Hide "+elidedSteps+" steps":"Show "+elidedSteps+" hidden steps");
+			} else {
+				setToolTipText(null);
+			}
+		}
+		
 	}
 	
 	private final TreeView view;
+	private final ConfigurationListener configurationListener;
+	private Configuration configuration; // the one configurationListener is registered with
+	private final ArrayList<ContextTreeNode> path; // root ... top, followed by the nodes below top down to current
+	private int topIndex; // index of top in path
+	private boolean expanded;
 	
 	
 	public BreadcrumbBar(final TreeView view) {
@@ -85,6 +150,8 @@ public final class BreadcrumbBar extends JPanel {
 		setBorder(new MatteBorder(0, 0, 1, 0, COLOR));
 		setLayout(new FlowLayout(FlowLayout.LEFT, 1, 1));
 		this.view = view;
+		path = new ArrayList<ContextTreeNode>();
+		topIndex = -1;
 		
 		// register listeners
 		view.addTreeViewListener(new TreeViewListener() {
@@ -101,55 +168,138 @@ public final class BreadcrumbBar extends JPanel {
 				update();
 			}
 		});
+		configurationListener = new ConfigurationListener() {
+			public void treeViewConfigurationChanged(final Property property) {
+				// the steps show the labels and colors of the nodes
+				final Set<CacheTier> tiers = view.getDependencyRegistry().getTiers(property.getKey());
+				if (tiers.contains(CacheTier.LABEL) || tiers.contains(CacheTier.COLOR)) {
+					refresh();
+				}
+			}
+		};
+		view.addPropertyChangeListener(TreeView.CONFIGURATION_PROPERTY, new PropertyChangeListener() {
+			public void propertyChange(final PropertyChangeEvent ev) {
+				setConfiguration(view.getConfiguration());
+				if (configuration!=null) {
+					refresh();
+				}
+			}
+		});
+		setConfiguration(view.getConfiguration());
 		
 		update();
 	}
 	
+	/**
+	 * Follow the Configuration of the view (which may get replaced),
+	 * so the bar neither shows stale labels and colors, nor keeps the old Configuration alive.
+	 */
+	private void setConfiguration(final Configuration configuration) {
+		if (this.configuration!=null) {
+			this.configuration.removeConfigurationListener(configurationListener);
+		}
+		this.configuration = configuration;
+		if (configuration!=null) {
+			configuration.addConfigurationListener(configurationListener);
+		}
+	}
+	
+	/**
+	 * Component i of the bar is the Step for path element i/2 (for even i),
+	 * or the Separator in front of path element (i+1)/2 (for odd i).
+	 */
 	private void update() {
-		removeAll();
+		final ArrayList<ContextTreeNode> newPath = new ArrayList<ContextTreeNode>();
 		final ContextTreeNode top = view.getTop();
-		ContextTreeNode node = top;
-		final ArrayList<JComponent> steps = new ArrayList<JComponent>();
-		while (node!=null) {
-			steps.add(new Step(node));
-			node = node.getParent();
-		}
-		for (int i=steps.size()-1; i>=0; i--) {
-			add(steps.get(i));
-			if (i>0) {
-				//final JLabel separator = new JLabel("\u00BB");
-				final JLabel separator = new JLabel("\u203A");
-				separator.setForeground(COLOR);
-				add(separator);
-			}
+		for (ContextTreeNode node = top; node!=null; node = node.getParent()) {
+			newPath.add(0, node);
 		}
-		
+		final int newTopIndex = newPath.size()-1;
 		final ContextTreeNode current = view.getCurrent();
-		if (current!=null) {
-			final JLabel topSeparator = new JLabel(" \u2015 ");
-			topSeparator.setForeground(COLOR);
-			add(topSeparator);
-
-			node = current;
-			steps.clear();
-			while (node!=top) {
-				steps.add(new Step(node));
+		if (current!=null && top!=null) {
+			final int end = newPath.size();
+			ContextTreeNode node = current;
+			while (node!=null && node!=top) {
+				newPath.add(end, node);
 				node = node.getParent();
 			}
-			for (int i=steps.size()-1; i>=0; i--) {
-				add(steps.get(i));
-				if (i>0) {
-					//final JLabel separator = new JLabel("\u00BB");
-					final JLabel separator = new JLabel("\u203A");
-					separator.setForeground(COLOR);
-					add(separator);
+			if (node==null) {
+				// current is not below top
+				while (newPath.size()>end) {
+					newPath.remove(newPath.size()-1);
 				}
 			}
 		}
 		
-		invalidate();
+		// keep the shared prefix
+		int common = 0;
+		while (common<path.size() && common<newPath.size() && path.get(common)==newPath.get(common)) {
+			common++;
+		}
+		if (common==path.size() && common==newPath.size() && topIndex==newTopIndex) {
+			return;
+		}
+		// remove the old suffix
+		for (int i=path.size()-1; i>=common; i--) {
+			remove(2*i);
+			if (i>0) {
+				remove(2*i-1);
+			}
+			path.remove(i);
+		}
+		// add the new suffix
+		for (int i=common; i<newPath.size(); i++) {
+			if (i>0) {
+				add(new Separator());
+			}
+			add(new Step(newPath.get(i)));
+			path.add(newPath.get(i));
+		}
+		topIndex = newTopIndex;
+		
+		updateSeparators();
+	}
+	
+	/**
+	 * Set separator texts and elide the middle of long segments
+	 * (the segment from the root to top, and the segment from top to current).
+	 */
+	private void updateSeparators() {
+		final int size = path.size();
+		for (int i=0; i<size; i++) {
+			getComponent(2*i).setVisible(true);
+		}
+		for (int i=1; i<size; i++) {
+			((Separator)getComponent(2*i-1)).setSeparator(i==topIndex+1?TOP_SEPARATOR:STEP_SEPARATOR, 0);
+			getComponent(2*i-1).setVisible(true);
+		}
+		updateElision(0, topIndex+1);
+		updateElision(topIndex+1, size);
+		
 		revalidate();
 		repaint();
 	}
 	
+	private void updateElision(final int start, final int end) {
+		final int elidedStart = start+HEAD_STEPS;
+		final int elidedEnd = end-TAIL_STEPS;
+		if (elidedEnd-elidedStart<2) {
+			// not worth eliding
+			return;
+		}
+		if (!expanded) {
+			for (int i=elidedStart; i<elidedEnd; i++) {
+				getComponent(2*i).setVisible(false);
+				getComponent(2*i-1).setVisible(false);
+			}
+		}
+		((Separator)getComponent(2*elidedEnd-1)).setSeparator(ELISION, elidedEnd-elidedStart);
+	}
+	
+	private void refresh() {
+		for (int i=0; i<path.size(); i++) {
+			((Step)getComponent(2*i)).refresh();
+		}
+	}
+	
 }
@@ -0,0 +1,41 @@
+/*
+ * This file is licensed to You under the "Simplified BSD License".
+ * You may not use this software except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.opensource.org/licenses/bsd-license.php
+ *
+ * See the COPYRIGHT file distributed with this work for information
+ * regarding copyright ownership.
+ */
+package ch.usi.inf.sape.trevis.swing;
+
+
+/**
+ * The kinds of derived state a TreeView and its renderers cache,
+ * and which a Property change can invalidate (see DependencyRegistry).
+ */
+public enum CacheTier {
+
+	/**
+	 * The geometry of the rendered nodes (which nodes are visible, and where).
+	 */
+	LAYOUT,
+	/**
+	 * The colors of the rendered nodes.
+	 */
+	COLOR,
+	/**
+	 * The labels drawn on the rendered nodes.
+	 */
+	LABEL,
+	/**
+	 * Statistics computed over the whole tree (e.g., the maximum saturation value).
+	 */
+	STATISTICS,
+	/**
+	 * The overlays drawn on top of the tree (info and properties).
+	 */
+	OVERLAY;
+	
+}
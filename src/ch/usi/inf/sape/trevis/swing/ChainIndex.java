@@ -0,0 +1,88 @@
+/*
+ * This file is licensed to You under the "Simplified BSD License".
+ * You may not use this software except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.opensource.org/licenses/bsd-license.php
+ *
+ * See the COPYRIGHT file distributed with this work for information
+ * regarding copyright ownership.
+ */
+package ch.usi.inf.sape.trevis.swing;
+
+import java.util.IdentityHashMap;
+
+import ch.usi.inf.sape.trevis.model.ContextTreeNode;
+
+
+/**
+ * A ChainIndex knows, for every node with exactly one child,
+ * where the chain of single-child nodes starting at that node ends.
+ * The end of a chain is the first node that does not have exactly one child.
+ * 
+ * Deep calling context trees contain long chains of single-child nodes,
+ * which a renderer can compress into a single element (see RenderPlan).
+ * The index gets built once per tree, with a single traversal.
+ */
+public final class ChainIndex {
+
+	private final ContextTreeNode root;
+	private final IdentityHashMap<ContextTreeNode, ContextTreeNode> ends;
+	private final IdentityHashMap<ContextTreeNode, Integer> lengths;
+	
+	
+	public ChainIndex(final ContextTreeNode root) {
+		this.root = root;
+		ends = new IdentityHashMap<ContextTreeNode, ContextTreeNode>();
+		lengths = new IdentityHashMap<ContextTreeNode, Integer>();
+		if (root!=null) {
+			index(root);
+		}
+	}
+	
+	/**
+	 * Index the subtree rooted at the given node, in postorder, so the chain of the only child of a node is known
+	 * by the time the node gets indexed.
+	 */
+	private void index(final ContextTreeNode root) {
+		final TraversalStack stack = new TraversalStack();
+		stack.push(root);
+		while (!stack.isEmpty()) {
+			final ContextTreeNode child = stack.nextChild();
+			if (child!=null) {
+				stack.push(child);
+			} else {
+				final ContextTreeNode node = stack.pop();
+				if (node.getChildCount()==1) {
+					final ContextTreeNode only = node.getChild(0);
+					final ContextTreeNode onlyEnd = ends.get(only);
+					ends.put(node, onlyEnd==null?only:onlyEnd);
+					final Integer onlyLength = lengths.get(only);
+					lengths.put(node, onlyLength==null?2:onlyLength+1);
+				}
+			}
+		}
+	}
+	
+	public ContextTreeNode getRoot() {
+		return root;
+	}
+	
+	/**
+	 * Get the end of the chain of single-child nodes starting at the given node
+	 * (null if the node does not have exactly one child).
+	 */
+	public ContextTreeNode getChainEnd(final ContextTreeNode node) {
+		return ends.get(node);
+	}
+	
+	/**
+	 * Get the number of nodes (including both ends) in the chain starting at the given node
+	 * (0 if the node does not have exactly one child).
+	 */
+	public int getChainLength(final ContextTreeNode node) {
+		final Integer length = lengths.get(node);
+		return length==null?0:length;
+	}
+	
+}
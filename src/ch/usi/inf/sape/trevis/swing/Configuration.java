@@ -12,6 +12,7 @@ package ch.usi.inf.sape.trevis.swing;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
 
 
 /**
@@ -20,58 +21,245 @@ import java.util.HashMap;
  * which means that if a user adjusts the visualization of one TreeView,
  * all the others are updated accordingly, too.
  * 
- * TODO: Allow for partial sharing of a subset of the properties
- * (some kind of delegation from a private to a shared Configuration).
+ * To share only a subset of the properties,
+ * give each TreeView a private Configuration that delegates to a shared parent Configuration.
+ * Lookups of keys not present in the private Configuration resolve in the parent (and its ancestors).
+ * Default properties (addPropertyIfNotPresent()) are added to the root-most Configuration,
+ * so they are shared, while addOrReplaceProperty() overrides a property locally.
+ * A private Configuration forwards the changes of its parent to its listeners,
+ * except for changes of properties it overrides.
+ * 
+ * To change several properties at once (e.g., when applying a preset),
+ * wrap the changes in a batch:
+ * <code>
+ * configuration.beginBatch();
+ * try {
+ *   ...
+ * } finally {
+ *   configuration.commitBatch();
+ * }
+ * </code>
+ * The listeners then get notified once per changed Property, after the outermost batch commits.
  * 
  * @author Matthias.Hauswirth@usi.ch
  */
 public final class Configuration {
 
-	private final HashMap<String, Property> properties;
+	private final Configuration parent; // null if this is a root Configuration
+	private final HashMap<String, Property> properties; // local properties only
+	private final HashMap<String, Property> resolved; // properties resolved in an ancestor
 	private final PropertyListener propertyListener;
-	private final ArrayList<ConfigurationListener> listeners;
+	private final ConfigurationListener parentListener; // registered weakly, kept alive by this Configuration
+	private final ListenerList<ConfigurationListener> listeners;
+	private volatile ConfigurationSnapshot snapshot; // null if outdated
+	private int batchDepth;
+	private final LinkedHashSet<Property> pendingChanges; // changed during the current batch
+	private ConfigurationSnapshot batchStart; // the values before the current batch, null if not in a batch
 	
 	
 	public Configuration() {
+		this(null);
+	}
+	
+	/**
+	 * Create a Configuration that delegates the lookup of keys it does not contain to the given parent.
+	 */
+	public Configuration(final Configuration parent) {
+		this.parent = parent;
 		properties = new HashMap<String, Property>();
-		listeners = new ArrayList<ConfigurationListener>();
+		resolved = new HashMap<String, Property>();
+		pendingChanges = new LinkedHashSet<Property>();
+		listeners = new ListenerList<ConfigurationListener>();
 		propertyListener = new PropertyListener() {
 			public void propertyChanged(final Property property) {
 				fireConfigurationChanged(property);
 			}
 		};
+		if (parent!=null) {
+			parentListener = new ConfigurationListener() {
+				public void treeViewConfigurationChanged(final Property property) {
+					parentConfigurationChanged(property);
+				}
+			};
+			parent.addWeakConfigurationListener(parentListener);
+		} else {
+			parentListener = null;
+		}
+	}
+	
+	public Configuration getParent() {
+		return parent;
 	}
 	
+	/**
+	 * Add the given property, unless this Configuration or one of its ancestors already contains a property with the same key.
+	 * The property is added to the root-most ancestor, so it is shared with all Configurations delegating to it.
+	 */
 	public void addPropertyIfNotPresent(final Property property) {
-		if (!properties.containsKey(property.getKey())) {
+		if (properties.containsKey(property.getKey())) {
+			return;
+		}
+		if (parent!=null) {
+			parent.addPropertyIfNotPresent(property);
+		} else {
 			properties.put(property.getKey(), property);
 			property.addPropertyListener(propertyListener);
 			fireConfigurationChanged(property);
 		}
 	}
 	
+	/**
+	 * Add the given property to this Configuration,
+	 * replacing (or, for a delegating Configuration, overriding) any property with the same key.
+	 */
 	public void addOrReplaceProperty(final Property property) {
 		final Property existingProperty = properties.get(property.getKey());
 		if (existingProperty!=null) {
 			existingProperty.removePropertyListener(propertyListener);
 		}
 		properties.put(property.getKey(), property);
+		resolved.remove(property.getKey());
 		property.addPropertyListener(propertyListener);
 		fireConfigurationChanged(property);
 	}
 	
+	/**
+	 * Remove the property with the given key from this Configuration
+	 * (for a delegating Configuration, the property of the parent applies again).
+	 */
+	public void removeProperty(final String key) {
+		final Property property = properties.remove(key);
+		if (property==null) {
+			return;
+		}
+		property.removePropertyListener(propertyListener);
+		resolved.remove(key);
+		fireConfigurationChanged(parent!=null && parent.containsProperty(key)?parent.lookup(key):property);
+	}
+	
 	public boolean containsProperty(final String key) {
+		return properties.containsKey(key) || (parent!=null && parent.containsProperty(key));
+	}
+	
+	/**
+	 * Does this Configuration itself (not one of its ancestors) contain a property with the given key?
+	 */
+	public boolean overridesProperty(final String key) {
 		return properties.containsKey(key);
 	}
 	
 	public Property lookup(final String key) {
-		final Property p = properties.get(key);
+		Property p = properties.get(key);
+		if (p==null && parent!=null) {
+			p = resolved.get(key);
+			if (p==null) {
+				p = parent.lookup(key);
+				resolved.put(key, p);
+			}
+		}
 		if (p==null) {
 			throw new IllegalArgumentException("Configuration does not contain a property with key '"+key+"'");
 		}
 		return p;
 	}
 	
+	private void parentConfigurationChanged(final Property property) {
+		final String key = property.getKey();
+		if (properties.containsKey(key)) {
+			// overridden here: our listeners don't care
+			return;
+		}
+		// an ancestor may have replaced the property
+		resolved.remove(key);
+		fireConfigurationChanged(property);
+	}
+	
+	private void collectProperties(final HashMap<String, Property> into) {
+		if (parent!=null) {
+			parent.collectProperties(into);
+		}
+		into.putAll(properties);
+	}
+	
+	
+	/**
+	 * Get an immutable snapshot of the current values of all properties.
+	 * The snapshot is compiled on the first call after a change, 
+	 * and the same instance is returned until the next change.
+	 * Call this on the thread that modifies the properties (usually the event dispatch thread);
+	 * the returned snapshot itself can be used by any thread.
+	 */
+	public ConfigurationSnapshot getSnapshot() {
+		ConfigurationSnapshot s = snapshot;
+		if (s==null) {
+			if (parent==null) {
+				s = new ConfigurationSnapshot(properties);
+			} else {
+				final HashMap<String, Property> merged = new HashMap<String, Property>();
+				collectProperties(merged);
+				s = new ConfigurationSnapshot(merged);
+			}
+			snapshot = s;
+		}
+		return s;
+	}
+	
+	
+	//--- batches
+	/**
+	 * Start a batch of changes.
+	 * Until the matching commitBatch(), the listeners do not get notified.
+	 * Batches can be nested; only the outermost commitBatch() notifies the listeners.
+	 */
+	public void beginBatch() {
+		if (batchDepth==0) {
+			batchStart = getSnapshot();
+		}
+		batchDepth++;
+	}
+	
+	/**
+	 * End a batch of changes started with beginBatch().
+	 * If this ends the outermost batch, notify the listeners once about each Property
+	 * that changed during the batch, in the order of their first change.
+	 * Properties whose value in the end is the same as before the batch (e.g., changed from A to B and back to A)
+	 * do not get notified.
+	 */
+	public void commitBatch() {
+		if (batchDepth==0) {
+			throw new IllegalStateException("commitBatch() without matching beginBatch()");
+		}
+		batchDepth--;
+		if (batchDepth==0) {
+			final ConfigurationSnapshot start = batchStart;
+			batchStart = null;
+			final ArrayList<Property> changes = new ArrayList<Property>(pendingChanges);
+			pendingChanges.clear();
+			for (final Property property : changes) {
+				if (!hasValueOf(property, start)) {
+					fireConfigurationChanged(property);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Does the given Property (still) have the value it had in the given snapshot?
+	 */
+	private static boolean hasValueOf(final Property property, final ConfigurationSnapshot snapshot) {
+		final String key = property.getKey();
+		if (!snapshot.contains(key)) {
+			return false;
+		}
+		final Object oldValue = snapshot.getValue(key);
+		final Object value = property.isVector()?new ArrayList<Object>(property.getValues()):property.getValue();
+		return oldValue==null?value==null:oldValue.equals(value);
+	}
+	
+	public boolean isInBatch() {
+		return batchDepth>0;
+	}
+	
 	
 	//--- debug
 	public void dump() {
@@ -80,6 +268,10 @@ public final class Configuration {
 			final Property property = properties.get(key);
 			property.dump();
 		}
+		if (parent!=null) {
+			System.out.print("Parent ");
+			parent.dump();
+		}
 	}
 
 	
@@ -88,11 +280,24 @@ public final class Configuration {
 		listeners.add(li);
 	}
 	
+	/**
+	 * Register a listener that does not keep itself alive
+	 * (see Property.addWeakPropertyListener()).
+	 */
+	public void addWeakConfigurationListener(final ConfigurationListener li) {
+		listeners.addWeak(li);
+	}
+	
 	public void removeConfigurationListener(final ConfigurationListener li) {
 		listeners.remove(li);
 	}
 	
 	private void fireConfigurationChanged(final Property property) {
+		snapshot = null;
+		if (batchDepth>0) {
+			pendingChanges.add(property);
+			return;
+		}
 		for (final ConfigurationListener li : listeners) {
 			li.treeViewConfigurationChanged(property);
 		}
@@ -0,0 +1,124 @@
+/*
+ * This file is licensed to You under the "Simplified BSD License".
+ * You may not use this software except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.opensource.org/licenses/bsd-license.php
+ *
+ * See the COPYRIGHT file distributed with this work for information
+ * regarding copyright ownership.
+ */
+package ch.usi.inf.sape.trevis.swing;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import ch.usi.inf.sape.trevis.model.attribute.BooleanAttribute;
+import ch.usi.inf.sape.trevis.model.attribute.DoubleAttribute;
+import ch.usi.inf.sape.trevis.model.attribute.LongAttribute;
+import ch.usi.inf.sape.trevis.model.attribute.StringAttribute;
+
+
+/**
+ * An immutable copy of the values of all Properties of a Configuration.
+ * 
+ * A Configuration compiles a new snapshot (lazily) after each change.
+ * Renderers take one snapshot per frame, derive their typed parameters from it,
+ * and thus avoid Property lookups while traversing the tree.
+ * Because it is immutable, a snapshot can safely be used by background threads.
+ */
+public final class ConfigurationSnapshot {
+
+	private final HashMap<String, Object> values; // scalar value, or unmodifiable List for vectors
+	
+	
+	ConfigurationSnapshot(final Map<String, Property> properties) {
+		values = new HashMap<String, Object>();
+		for (final Property property : properties.values()) {
+			if (property.isVector()) {
+				values.put(property.getKey(), Collections.unmodifiableList(new ArrayList<Object>(property.getValues())));
+			} else {
+				values.put(property.getKey(), property.getValue());
+			}
+		}
+	}
+	
+	public boolean contains(final String key) {
+		return values.containsKey(key);
+	}
+	
+	private Object lookup(final String key) {
+		if (!values.containsKey(key)) {
+			throw new IllegalArgumentException("Configuration snapshot does not contain a property with key '"+key+"'");
+		}
+		return values.get(key);
+	}
+	
+	
+	//--- scalar accessors
+	public Object getValue(final String key) {
+		return lookup(key);
+	}
+	
+	public int getInt(final String key) {
+		return (Integer)lookup(key);
+	}
+	
+	public long getLong(final String key) {
+		return (Long)lookup(key);
+	}
+	
+	public double getDouble(final String key) {
+		return (Double)lookup(key);
+	}
+	
+	public boolean getBoolean(final String key) {
+		return (Boolean)lookup(key);
+	}
+	
+	public String getString(final String key) {
+		return (String)lookup(key);
+	}
+	
+	public LongAttribute getLongAttribute(final String key) {
+		return (LongAttribute)lookup(key);
+	}
+	
+	public DoubleAttribute getDoubleAttribute(final String key) {
+		return (DoubleAttribute)lookup(key);
+	}
+	
+	public BooleanAttribute getBooleanAttribute(final String key) {
+		return (BooleanAttribute)lookup(key);
+	}
+	
+	public StringAttribute getStringAttribute(final String key) {
+		return (StringAttribute)lookup(key);
+	}
+	
+	
+	//--- vector accessors
+	@SuppressWarnings("unchecked")
+	public List<Object> getValues(final String key) {
+		return (List<Object>)lookup(key);
+	}
+	
+	@SuppressWarnings("unchecked")
+	public List<LongAttribute> getLongAttributes(final String key) {
+		return (List<LongAttribute>)lookup(key);
+	}
+	
+	@SuppressWarnings("unchecked")
+	public List<StringAttribute> getStringAttributes(final String key) {
+		return (List<StringAttribute>)lookup(key);
+	}
+	
+	@SuppressWarnings("unchecked")
+	public List<BooleanAttribute> getBooleanAttributes(final String key) {
+		return (List<BooleanAttribute>)lookup(key);
+	}
+	
+}
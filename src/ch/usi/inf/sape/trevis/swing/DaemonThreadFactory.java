@@ -0,0 +1,46 @@
+/*
+ * This file is licensed to You under the "Simplified BSD License".
+ * You may not use this software except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.opensource.org/licenses/bsd-license.php
+ *
+ * See the COPYRIGHT file distributed with this work for information
+ * regarding copyright ownership.
+ */
+package ch.usi.inf.sape.trevis.swing;
+
+import java.util.concurrent.ThreadFactory;
+
+
+/**
+ * A ThreadFactory for the background threads shared by all TreeViews
+ * (loading, prewarming, publishing, listener dispatch).
+ * The threads are daemons, so they never keep the application alive.
+ * 
+ * The executors using it can be created eagerly (in a static initializer):
+ * they only start threads when the first task arrives.
+ */
+public final class DaemonThreadFactory implements ThreadFactory {
+
+	private final String name;
+	private final int priority;
+	
+	
+	public DaemonThreadFactory(final String name) {
+		this(name, Thread.NORM_PRIORITY);
+	}
+	
+	public DaemonThreadFactory(final String name, final int priority) {
+		this.name = name;
+		this.priority = priority;
+	}
+	
+	public Thread newThread(final Runnable r) {
+		final Thread thread = new Thread(r, name);
+		thread.setDaemon(true);
+		thread.setPriority(priority);
+		return thread;
+	}
+	
+}
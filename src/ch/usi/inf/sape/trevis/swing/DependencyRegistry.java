@@ -0,0 +1,66 @@
+/*
+ * This file is licensed to You under the "Simplified BSD License".
+ * You may not use this software except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.opensource.org/licenses/bsd-license.php
+ *
+ * See the COPYRIGHT file distributed with this work for information
+ * regarding copyright ownership.
+ */
+package ch.usi.inf.sape.trevis.swing;
+
+import java.util.EnumSet;
+import java.util.HashMap;
+
+
+/**
+ * A DependencyRegistry records which CacheTiers depend on which Property (by key).
+ * 
+ * A TreeView and its renderers declare their dependencies when the TreeView is created.
+ * When a Property changes, the TreeView then only invalidates the affected tiers,
+ * and does not even repaint if no tier depends on the Property (e.g., SHOW_TOOLTIPS).
+ * A Property nobody declared anything for conservatively invalidates all tiers.
+ */
+public final class DependencyRegistry {
+
+	private final HashMap<String, EnumSet<CacheTier>> dependencies;
+	
+	
+	public DependencyRegistry() {
+		dependencies = new HashMap<String, EnumSet<CacheTier>>();
+	}
+	
+	/**
+	 * Declare that the given tiers depend on the Property with the given key.
+	 * Declarations for the same key accumulate (e.g., from different renderers).
+	 * Declaring no tiers states that no cache depends on the Property.
+	 */
+	public void declare(final String key, final CacheTier... tiers) {
+		EnumSet<CacheTier> set = dependencies.get(key);
+		if (set==null) {
+			set = EnumSet.noneOf(CacheTier.class);
+			dependencies.put(key, set);
+		}
+		for (final CacheTier tier : tiers) {
+			set.add(tier);
+		}
+	}
+	
+	public boolean isDeclared(final String key) {
+		return dependencies.containsKey(key);
+	}
+	
+	/**
+	 * Get the tiers depending on the Property with the given key
+	 * (all tiers, if nothing has been declared for that key).
+	 */
+	public EnumSet<CacheTier> getTiers(final String key) {
+		final EnumSet<CacheTier> set = dependencies.get(key);
+		if (set==null) {
+			return EnumSet.allOf(CacheTier.class);
+		}
+		return EnumSet.copyOf(set);
+	}
+	
+}
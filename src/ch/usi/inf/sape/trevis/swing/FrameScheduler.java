@@ -0,0 +1,103 @@
+/*
+ * This file is licensed to You under the "Simplified BSD License".
+ * You may not use this software except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.opensource.org/licenses/bsd-license.php
+ *
+ * See the COPYRIGHT file distributed with this work for information
+ * regarding copyright ownership.
+ */
+package ch.usi.inf.sape.trevis.swing;
+
+import java.awt.Rectangle;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+
+import javax.swing.Timer;
+
+
+/**
+ * A FrameScheduler coalesces the frame requests of a TreeView.
+ * Any number of requests (mouse moves, Property changes, listeners)
+ * arriving within one frame interval lead to at most one hover update and one repaint.
+ * If all requests of a frame only concern parts of the view (see requestFrame(Rectangle)),
+ * only the union of those parts gets repainted.
+ * 
+ * All methods have to be called on the event dispatch thread.
+ */
+final class FrameScheduler {
+
+	private static final int FRAME_INTERVAL = 16; // milliseconds (about 60 frames per second)
+	
+	private final TreeView view;
+	private final Timer timer;
+	private boolean hoverPending;
+	private boolean fullFramePending;
+	private Rectangle dirtyRegion; // null if no partial repaint is pending
+	private long lastFrameTime;
+	
+	
+	public FrameScheduler(final TreeView view) {
+		this.view = view;
+		timer = new Timer(FRAME_INTERVAL, new ActionListener() {
+			public void actionPerformed(final ActionEvent ev) {
+				frame();
+			}
+		});
+		timer.setRepeats(false);
+	}
+	
+	/**
+	 * Request a repaint in the next frame.
+	 */
+	public void requestFrame() {
+		fullFramePending = true;
+		startTimer();
+	}
+	
+	/**
+	 * Request a repaint of the given region in the next frame.
+	 */
+	public void requestFrame(final Rectangle region) {
+		if (dirtyRegion==null) {
+			dirtyRegion = new Rectangle(region);
+		} else {
+			dirtyRegion.add(region);
+		}
+		startTimer();
+	}
+	
+	private void startTimer() {
+		if (!timer.isRunning()) {
+			final long sinceLastFrame = System.currentTimeMillis()-lastFrameTime;
+			timer.setInitialDelay((int)Math.max(0, Math.min(FRAME_INTERVAL, FRAME_INTERVAL-sinceLastFrame)));
+			timer.start();
+		}
+	}
+	
+	/**
+	 * Request a hit test at the current mouse position, followed by a repaint, in the next frame.
+	 */
+	public void requestHoverUpdate() {
+		hoverPending = true;
+		requestFrame();
+	}
+	
+	private void frame() {
+		lastFrameTime = System.currentTimeMillis();
+		view.pollSource();
+		if (hoverPending) {
+			hoverPending = false;
+			view.updateHover();
+		}
+		if (fullFramePending || dirtyRegion==null) {
+			view.repaint();
+		} else {
+			view.repaint(dirtyRegion);
+		}
+		fullFramePending = false;
+		dirtyRegion = null;
+	}
+	
+}
@@ -13,8 +13,10 @@ package ch.usi.inf.sape.trevis.swing;
 import java.awt.Color;
 import java.awt.FontMetrics;
 import java.awt.Graphics2D;
+import java.awt.Rectangle;
 import java.awt.Shape;
 import java.util.List;
+import java.util.Set;
 
 import javax.swing.JMenu;
 import javax.swing.JPopupMenu;
@@ -61,7 +63,33 @@ public final class HighriseRenderer extends TreeViewRenderer {
 	public static final String HEIGHT_ATTRIBUTE = "HEIGHT_ATTRIBUTE";
 	public static final String AVAILABLE_HEIGHT_ATTRIBUTES = "AVAILABLE_HEIGHT_ATTRIBUTES";
 	
+	/**
+	 * The parameters of this renderer, compiled once per Configuration change.
+	 */
+	private static final class Parameters {
+		private final RenderParameters view;
+		private final int horizontalGap;
+		private final int verticalGap;
+		private final int fixedHeight;
+		private final int maxVariableHeight;
+		private final LabelVisibility labelVisibility;
+		private final LongAttribute heightAttribute;
+		
+		public Parameters(final RenderParameters view) {
+			this.view = view;
+			final ConfigurationSnapshot snapshot = view.getSnapshot();
+			horizontalGap = snapshot.getInt(HORIZONTAL_GAP);
+			verticalGap = snapshot.getInt(VERTICAL_GAP);
+			fixedHeight = snapshot.getInt(FIXED_HEIGHT);
+			maxVariableHeight = snapshot.getInt(MAX_VARIABLE_HEIGHT);
+			labelVisibility = (LabelVisibility)snapshot.getValue(LABEL_VISIBILITY);
+			heightAttribute = snapshot.getLongAttribute(HEIGHT_ATTRIBUTE);
+		}
+	}
+	
 	private long maxHeightMetricValue;
+	private Parameters parameters;
+	private int[] bases; // scratch array for findEntry() and renderTree()
 
 	
 	public HighriseRenderer() {
@@ -84,12 +112,29 @@ public final class HighriseRenderer extends TreeViewRenderer {
 		final LongAttribute defaultHeightAttribute = new ChildCountAttribute();
 		configuration.addPropertyIfNotPresent(new Property(HEIGHT_ATTRIBUTE, "Height", LongAttribute.class, defaultHeightAttribute));
 		configuration.addPropertyIfNotPresent(new Property(AVAILABLE_HEIGHT_ATTRIBUTES, "Available heights", LongAttribute[].class, new LongAttribute[] {defaultHeightAttribute}));
-
-		configuration.lookup(HEIGHT_ATTRIBUTE).addPropertyListener(new PropertyListener() {
-			public void propertyChanged(Property property) {
-				recomputeMaxHeightMetricValue();
-			}
-		});
+	}
+	
+	@Override
+	public void declareDependencies(final DependencyRegistry registry) {
+		registry.declare(HORIZONTAL_GAP, CacheTier.LAYOUT);
+		registry.declare(VERTICAL_GAP, CacheTier.LAYOUT);
+		registry.declare(FIXED_HEIGHT, CacheTier.LAYOUT);
+		registry.declare(MAX_VARIABLE_HEIGHT, CacheTier.LAYOUT);
+		registry.declare(LABEL_VISIBILITY, CacheTier.LABEL);
+		registry.declare(HEIGHT_ATTRIBUTE, CacheTier.LAYOUT, CacheTier.STATISTICS);
+		registry.declare(AVAILABLE_HEIGHT_ATTRIBUTES);
+	}
+	
+	@Override
+	public void addPrewarmAttributes(final List<LongAttribute> attributes) {
+		attributes.addAll(getConfiguration().lookup(AVAILABLE_HEIGHT_ATTRIBUTES).getLongAttributes());
+	}
+	
+	@Override
+	public void invalidateCaches(final Set<CacheTier> tiers, final Property property) {
+		if (tiers.contains(CacheTier.STATISTICS) && HEIGHT_ATTRIBUTE.equals(property.getKey())) {
+			recomputeMaxHeightMetricValue();
+		}
 	}
 		
 	/**
@@ -200,6 +245,16 @@ public final class HighriseRenderer extends TreeViewRenderer {
 	}
 	
 	
+	private Parameters getParameters(final RenderParameters view) {
+		Parameters p = parameters;
+		if (p==null || p.view!=view) {
+			p = new Parameters(view);
+			parameters = p;
+		}
+		return p;
+	}
+	
+	
 	//--- statistics
 	@Override
 	public void recomputeStatistics() {
@@ -207,18 +262,9 @@ public final class HighriseRenderer extends TreeViewRenderer {
 	}
 
 	private void recomputeMaxHeightMetricValue() {
-		if (getHeightAttribute()!=null) {
-			maxHeightMetricValue = Long.MIN_VALUE;
-			if (getRoot()!=null) {
-				recomputeMaxHeightMetricValue(getRoot());
-			}
-		}
-	}
-
-	private void recomputeMaxHeightMetricValue(final ContextTreeNode node) {
-		maxHeightMetricValue = Math.max(maxHeightMetricValue, getHeightAttribute().evaluate(node));
-		for (final ContextTreeNode child : node) {
-			recomputeMaxHeightMetricValue(child);
+		final LongAttribute heightAttribute = getHeightAttribute();
+		if (heightAttribute!=null) {
+			maxHeightMetricValue = getMaximum(heightAttribute);
 		}
 	}
 
@@ -271,121 +317,128 @@ public final class HighriseRenderer extends TreeViewRenderer {
 	
 	//--- hit testing
 	@Override
-	public ContextTreeNode findNode(final int x, final int y) {
-		if (getTop()==null) {
-			return null;
+	public int findEntry(final RenderPlan plan, final int x, final int y, final RenderParameters parameters) {
+		final Parameters p = getParameters(parameters);
+		final int width = getWidth();
+		final int[] bases = getBases(plan.size());
+		int hit = -1;
+		int entry = 0;
+		while (entry<plan.size()) {
+			final int left = (int)(width*plan.getStart(entry));
+			final int w = (int)(width*(plan.getStart(entry)+plan.getExtent(entry)))-left;
+			if (w<2*p.horizontalGap || x<left || x>=left+w) {
+				// the subtree is not shown, or does not contain the position
+				entry = plan.getSubtreeEnd(entry);
+				continue;
+			}
+			final int parent = plan.getParent(entry);
+			final int baseHeight = parent<0?0:bases[parent];
+			final int variableHeight = plan.isAggregate(entry)?0:getVariableHeight(p, plan.getNode(entry));
+			bases[entry] = baseHeight+p.fixedHeight+variableHeight;
+			final int yBottom = getHeight()-1-baseHeight;
+			final int yTop = getHeight()-1-baseHeight-p.fixedHeight-variableHeight;
+			if (y>=yTop && y<yBottom) {
+				hit = entry;
+			}
+			entry++;
 		}
-		return findNode(getTop(), x, y, 0, getWidth(), 0);
+		return hit;
 	}
 	
-	private ContextTreeNode findNode(final ContextTreeNode node, final int mx, final int my, final int x, final int w, final int baseHeight) {
-		final int gap = getHorizontalGap();
-		if (w<2*gap) {
-			return null;
-		}
-		final LongAttribute sizeMetric = getView().getSizeAttribute();
-		final long size = sizeMetric.evaluate(node);
-		if (size==0) {
-			return null;
-		}
-		if (size < getView().getCutoff()*sizeMetric.evaluate(getRoot())/1000) {
-			// cut-off at cutoff 1000ths of root's angle
-			return null;
-		}
-
-		final LongAttribute heightMetric = getHeightAttribute();
-		final long heightMetricValue = heightMetric.evaluate(node);
-		final int variableHeight = (int)(getMaxVariableHeight()*heightMetricValue/maxHeightMetricValue);
-
-		final int yBottom = getHeight()-1-baseHeight;
-		final int yTop = getHeight()-1-baseHeight-getFixedHeight()-variableHeight;
-
-		long sum = 0;
-		for (int c = 0; c<node.getChildCount(); c++) {
-			final long childValue = sizeMetric.evaluate(node.getChild(c));
-			final int childLeftX = (int)(x+(w*sum/size));
-			final int childRightX = (int)(x+(w*(sum+childValue)/size));
-			final int childWidth = childRightX-childLeftX;
-			final ContextTreeNode hit = findNode(node.getChild(c), mx, my, childLeftX, childWidth, baseHeight+getFixedHeight()+variableHeight);
-			if (hit!=null) {
-				return hit;
-			}
-			sum += childValue;
-		}
-		
-		if (mx>=x && mx<x+w && my>=yTop && my<yBottom) {
-			return node;
-		} else {
-			return null;
+	private int getVariableHeight(final Parameters p, final ContextTreeNode node) {
+		final long heightMetricValue = p.heightAttribute.evaluate(node);
+		return (int)(p.maxVariableHeight*heightMetricValue/maxHeightMetricValue);
+	}
+	
+	/**
+	 * Get a scratch array for the base heights of the children of each entry of a plan.
+	 */
+	private int[] getBases(final int size) {
+		if (bases==null || bases.length<size) {
+			bases = new int[size];
 		}
+		return bases;
 	}
 
 	
 	//--- rendering
+	/**
+	 * The descendants of an entry are stacked on top of it (within its horizontal range),
+	 * so they move when its height changes: repaint the whole column above the entry.
+	 */
 	@Override
-	public void renderTree(final Graphics2D g2, final Surface surface) {
-		renderNode(g2, surface, getTop(), 0, surface.getWidth(), 0);
+	public Rectangle getRepaintBounds(final RenderPlan plan, final int entry, final Surface surface, final RenderParameters parameters) {
+		final int width = surface.getWidth();
+		final int x = (int)(width*plan.getStart(entry));
+		final int w = (int)(width*(plan.getStart(entry)+plan.getExtent(entry)))-x;
+		return new Rectangle(x, 0, w+1, surface.getHeight());
 	}
-
-	private void renderNode(final Graphics2D g2, final Surface surface, final ContextTreeNode node, final int x, final int w, final int baseHeight) {
-		final int gap = getHorizontalGap();
-		if (w<2*gap || w<1) {
-			return;
-		}
-		final LongAttribute widthMetric = getView().getSizeAttribute();
-		final long size = widthMetric.evaluate(node);
-		if (size==0) {
-			return;
-		}
-		if (size < getView().getCutoff()*widthMetric.evaluate(getRoot())/1000) {
-			// cut-off at cutoff 1000ths of root's angle
-			return;
+	
+	@Override
+	public void renderTree(final Graphics2D g2, final Surface surface, final RenderPlan plan, final RenderParameters parameters) {
+		final Parameters p = getParameters(parameters);
+		final int width = surface.getWidth();
+		final int[] bases = getBases(plan.size());
+		final Rectangle clip = g2.getClipBounds();
+		int entry = 0;
+		while (entry<plan.size()) {
+			final int x = (int)(width*plan.getStart(entry));
+			final int w = (int)(width*(plan.getStart(entry)+plan.getExtent(entry)))-x;
+			if (w<2*p.horizontalGap || w<1 || plan.getSize(entry)==0 || (clip!=null && (x+w<clip.x || x>clip.x+clip.width))) {
+				// too small, or outside the region to repaint
+				entry = plan.getSubtreeEnd(entry);
+				continue;
+			}
+			final int parent = plan.getParent(entry);
+			final int baseHeight = parent<0?0:bases[parent];
+			final int variableHeight = plan.isAggregate(entry)?0:getVariableHeight(p, plan.getNode(entry));
+			bases[entry] = baseHeight+p.fixedHeight+variableHeight;
+			renderNode(p, g2, surface, plan, entry, x, w, baseHeight, variableHeight);
+			entry++;
 		}
+	}
 
+	private void renderNode(final Parameters p, final Graphics2D g2, final Surface surface, final RenderPlan plan, final int entry, final int x, final int w, final int baseHeight, final int variableHeight) {
+		final int gap = p.horizontalGap;
+		final ContextTreeNode node = plan.getNode(entry);
+		final boolean aggregate = plan.isAggregate(entry);
 
 		// background
-		final boolean focusSame = getView().getFocusSame();
-		final ContextTreeNode current = getCurrent();
-		final boolean focused = node==current || (focusSame && 
-				(current!=null && node!=null && current.getLabel()!=null && node.getLabel()!=null && current.getLabel().equals(node.getLabel())));
-		final int hsb = getHsb(node, focused);
-		g2.setColor(new Color(Colors.hsbToRgb(hsb)));
-
-		final LongAttribute heightMetric = getHeightAttribute();
-		final long heightMetricValue = heightMetric.evaluate(node);
-		final int variableHeight = (int)(getMaxVariableHeight()*heightMetricValue/maxHeightMetricValue);
+		if (aggregate || isPlaceholder(node)) {
+			g2.setColor(getPlaceholderColor(node));
+		} else {
+			final boolean focusSame = p.view.getFocusSame();
+			final ContextTreeNode current = getCurrent();
+			final boolean focused = node==current || (focusSame && 
+					(current!=null && node!=null && current.getLabel()!=null && node.getLabel()!=null && current.getLabel().equals(node.getLabel())));
+			final int hsb = getHsb(node, focused, p.view);
+			g2.setColor(new Color(Colors.hsbToRgb(hsb)));
+		}
 
 		final int yBottom = surface.getHeight()-1-baseHeight;
-		final int yTop = surface.getHeight()-1-baseHeight-getFixedHeight()-variableHeight;
-		final int h = yBottom-yTop-getVerticalGap();
+		final int yTop = surface.getHeight()-1-baseHeight-p.fixedHeight-variableHeight;
+		final int h = yBottom-yTop-p.verticalGap;
 		g2.fillRect(x+gap, yTop, w-gap, h);
+		if (plan.isTruncated(entry)) {
+			g2.setColor(TRUNCATION_COLOR);
+			g2.fillRect(x+gap, yTop, w-gap, Math.min(h, TRUNCATION_MARK_SIZE));
+		}
 
 		// name
-		final LabelVisibility labelVisibility = getLabelVisibility();
-		if (labelVisibility==LabelVisibility.SHOW_ALL || (labelVisibility==LabelVisibility.HIDE_ZERO && variableHeight>0)) {
+		final LabelVisibility labelVisibility = p.labelVisibility;
+		if (labelVisibility==LabelVisibility.SHOW_ALL || (labelVisibility==LabelVisibility.HIDE_ZERO && (variableHeight>0 || aggregate))) {
 			g2.setColor(Color.WHITE);
 			final int cx = x+w/2;
 			final int cy = yTop+h/2;
-			final String label = ""+getView().getLabelAttribute().getValue(node); 
+			final String label = getLabel(plan, entry, p.view);
 			final FontMetrics fm = g2.getFontMetrics();
 			final float labelWidth = (float)fm.getStringBounds(label, g2).getWidth();
 			final int labelOffset = fm.getHeight()/2-fm.getDescent();
 			final Shape clip = g2.getClip();
-			g2.setClip(x, yTop, w, h);
+			g2.clipRect(x, yTop, w, h);
 			g2.drawString(label, cx-labelWidth/2, cy+labelOffset);
 			g2.setClip(clip);
 		}
-		
-		// children
-		long sum = 0;
-		for (int c = 0; c<node.getChildCount(); c++) {
-			final long childValue = widthMetric.evaluate(node.getChild(c));
-			final int childLeftX = (int)(x+(w*sum/size));
-			final int childRightX = (int)(x+(w*(sum+childValue)/size));
-			final int childWidth = childRightX-childLeftX;
-			renderNode(g2, surface, node.getChild(c), childLeftX, childWidth, baseHeight+getFixedHeight()+variableHeight);
-			sum += childValue;
-		}
 	}
 	
 }
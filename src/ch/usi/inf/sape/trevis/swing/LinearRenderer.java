@@ -13,14 +13,13 @@ package ch.usi.inf.sape.trevis.swing;
 import java.awt.Color;
 import java.awt.FontMetrics;
 import java.awt.Graphics2D;
+import java.awt.Rectangle;
 import java.awt.Shape;
 
 import javax.swing.JMenu;
 import javax.swing.JPopupMenu;
 
 import ch.usi.inf.sape.trevis.model.ContextTreeNode;
-import ch.usi.inf.sape.trevis.model.attribute.HeightAttribute;
-import ch.usi.inf.sape.trevis.model.attribute.LongAttribute;
 import ch.usi.inf.sape.trevis.swing.action.SetIntPropertyAction;
 import ch.usi.inf.sape.trevis.swing.action.ToggleBooleanPropertyAction;
 import ch.usi.inf.sape.util.Colors;
@@ -38,6 +37,26 @@ public final class LinearRenderer extends TreeViewRenderer {
 	public static final String VERTICAL_GAP = "VERTICAL_GAP";
 	public static final String SHOW_LABELS = "SHOW_LABELS";
 	
+	/**
+	 * The parameters of this renderer, compiled once per Configuration change.
+	 */
+	private static final class Parameters {
+		private final RenderParameters view;
+		private final int horizontalGap;
+		private final int verticalGap;
+		private final boolean showLabels;
+		
+		public Parameters(final RenderParameters view) {
+			this.view = view;
+			final ConfigurationSnapshot snapshot = view.getSnapshot();
+			horizontalGap = snapshot.getInt(HORIZONTAL_GAP);
+			verticalGap = snapshot.getInt(VERTICAL_GAP);
+			showLabels = snapshot.getBoolean(SHOW_LABELS);
+		}
+	}
+	
+	private Parameters parameters;
+	
 	
 	public LinearRenderer() {
 	}
@@ -54,6 +73,13 @@ public final class LinearRenderer extends TreeViewRenderer {
 		configuration.addPropertyIfNotPresent(new Property(VERTICAL_GAP, "Vertical gap", Integer.class, 1));
 		configuration.addPropertyIfNotPresent(new Property(SHOW_LABELS, "Show labels", Boolean.class, true));
 	}
+	
+	@Override
+	public void declareDependencies(final DependencyRegistry registry) {
+		registry.declare(HORIZONTAL_GAP, CacheTier.LAYOUT);
+		registry.declare(VERTICAL_GAP, CacheTier.LAYOUT);
+		registry.declare(SHOW_LABELS, CacheTier.LABEL);
+	}
 		
 	/**
 	 * Convenience method delegating to TreeViewConfiguration.
@@ -98,6 +124,16 @@ public final class LinearRenderer extends TreeViewRenderer {
 	}
 
 	
+	private Parameters getParameters(final RenderParameters view) {
+		Parameters p = parameters;
+		if (p==null || p.view!=view) {
+			p = new Parameters(view);
+			parameters = p;
+		}
+		return p;
+	}
+
+	
 	//--- statistics
 	@Override
 	public void recomputeStatistics() {
@@ -128,110 +164,121 @@ public final class LinearRenderer extends TreeViewRenderer {
 	}
 
 	
-	//--- hit testing
-	@Override
-	public ContextTreeNode findNode(final int x, final int y) {
-		if (getTop()==null) {
-			return null;
-		}
-		final int height = (int)new HeightAttribute().evaluate(getTop());
-		return findNode(getTop(), x, y, 0, getWidth(), height, 0);
+	/**
+	 * Get the number of levels to lay out.
+	 * Compressed chains make the plan shallower than the tree,
+	 * and with a depth horizon, we do not want to traverse the levels below it.
+	 */
+	private int getLevels(final RenderPlan plan) {
+		return (plan.getCompressChains() || plan.getDepthHorizon()>0)?plan.getMaxDepth()+1:plan.getTreeHeight();
 	}
 	
-	private ContextTreeNode findNode(final ContextTreeNode node, final int mx, final int my, final int x, final int w, final int height, final int depth) {
-		final int gap = getHorizontalGap();
-		if (w<2*gap) {
-			return null;
-		}
-		final LongAttribute sizeMetric = getView().getSizeAttribute();
-		final long size = sizeMetric.evaluate(node);
-		if (size==0) {
-			return null;
-		}
-
-		long sum = 0;
-		for (int c = 0; c<node.getChildCount(); c++) {
-			final long childValue = sizeMetric.evaluate(node.getChild(c));
-			final int childLeftX = (int)(x+(w*sum/size));
-			final int childRightX = (int)(x+(w*(sum+childValue)/size));
-			final int childWidth = childRightX-childLeftX;
-			final ContextTreeNode hit = findNode(node.getChild(c), mx, my, childLeftX, childWidth, height, depth+1);
-			if (hit!=null) {
-				return hit;
+	
+	//--- hit testing
+	@Override
+	public int findEntry(final RenderPlan plan, final int x, final int y, final RenderParameters parameters) {
+		final Parameters p = getParameters(parameters);
+		final int height = getLevels(plan);
+		final int width = getWidth();
+		int hit = -1;
+		int entry = 0;
+		while (entry<plan.size()) {
+			final int left = (int)(width*plan.getStart(entry));
+			final int w = (int)(width*(plan.getStart(entry)+plan.getExtent(entry)))-left;
+			if (w<2*p.horizontalGap || x<left || x>=left+w) {
+				// the subtree is not shown, or does not contain the position
+				entry = plan.getSubtreeEnd(entry);
+				continue;
 			}
-			sum += childValue;
-		}
-		
-		final int yTop = getHeight()-1-(depth+1)*getHeight()/height;
-		final int yBottom = getHeight()-1-(depth)*getHeight()/height;
-		if (mx>=x && mx<x+w && my>=yTop && my<yBottom) {
-			return node;
-		} else {
-			return null;
+			final int depth = plan.getDepth(entry);
+			final int yTop = getHeight()-1-(depth+1)*getHeight()/height;
+			final int yBottom = getHeight()-1-(depth)*getHeight()/height;
+			if (y>=yTop && y<yBottom) {
+				hit = entry;
+			}
+			entry++;
 		}
+		return hit;
 	}
 
 	
 	//--- rendering
+	/**
+	 * The descendants of an entry stay within its horizontal range,
+	 * so only the rectangle of the entry itself changes.
+	 */
 	@Override
-	public void renderTree(final Graphics2D g2, final Surface surface) {
-		final int height = (int)new HeightAttribute().evaluate(getTop());
-		renderNode(g2, surface, getTop(), 0, surface.getWidth(), height, 0);
+	public Rectangle getRepaintBounds(final RenderPlan plan, final int entry, final Surface surface, final RenderParameters parameters) {
+		final int height = getLevels(plan);
+		final int width = surface.getWidth();
+		final int x = (int)(width*plan.getStart(entry));
+		final int w = (int)(width*(plan.getStart(entry)+plan.getExtent(entry)))-x;
+		final int depth = plan.getDepth(entry);
+		final int yTop = surface.getHeight()-1-(depth+1)*surface.getHeight()/height;
+		final int yBottom = surface.getHeight()-1-(depth)*surface.getHeight()/height;
+		return new Rectangle(x, yTop, w+1, yBottom-yTop+1);
 	}
-
-	private void renderNode(final Graphics2D g2, final Surface surface, final ContextTreeNode node, final int x, final int w, final int height, final int depth) {
-		final int gap = getHorizontalGap();
-		if (w<2*gap || w<1) {
-			return;
-		}
-		final LongAttribute sizeMetric = getView().getSizeAttribute();
-		final long size = sizeMetric.evaluate(node);
-		if (size==0) {
-			return;
-		}
-		if (size < getView().getCutoff()*sizeMetric.evaluate(getRoot())/1000) {
-			// cut-off at cutoff 1000ths of root's angle
-			return;
+	
+	@Override
+	public void renderTree(final Graphics2D g2, final Surface surface, final RenderPlan plan, final RenderParameters parameters) {
+		final Parameters p = getParameters(parameters);
+		final int height = getLevels(plan);
+		final int width = surface.getWidth();
+		final Rectangle clip = g2.getClipBounds();
+		int entry = 0;
+		while (entry<plan.size()) {
+			final int x = (int)(width*plan.getStart(entry));
+			final int w = (int)(width*(plan.getStart(entry)+plan.getExtent(entry)))-x;
+			if (w<2*p.horizontalGap || w<1 || plan.getSize(entry)==0 || (clip!=null && (x+w<clip.x || x>clip.x+clip.width))) {
+				// too small, or outside the region to repaint
+				entry = plan.getSubtreeEnd(entry);
+				continue;
+			}
+			renderNode(p, g2, surface, plan, entry, x, w, height);
+			entry++;
 		}
+	}
 
+	private void renderNode(final Parameters p, final Graphics2D g2, final Surface surface, final RenderPlan plan, final int entry, final int x, final int w, final int height) {
+		final int gap = p.horizontalGap;
+		final ContextTreeNode node = plan.getNode(entry);
+		final boolean aggregate = plan.isAggregate(entry);
+		final int depth = plan.getDepth(entry);
 
 		// background
-		final boolean focusSame = getView().getFocusSame();
-		final ContextTreeNode current = getCurrent();
-		final boolean focused = node==current || (focusSame && 
-				(current!=null && node!=null && current.getLabel()!=null && node.getLabel()!=null && current.getLabel().equals(node.getLabel())));
-		final int hsb = getHsb(node, focused);
-		g2.setColor(new Color(Colors.hsbToRgb(hsb)));
+		if (aggregate || isPlaceholder(node)) {
+			g2.setColor(getPlaceholderColor(node));
+		} else {
+			final boolean focusSame = p.view.getFocusSame();
+			final ContextTreeNode current = getCurrent();
+			final boolean focused = node==current || (focusSame && 
+					(current!=null && node!=null && current.getLabel()!=null && node.getLabel()!=null && current.getLabel().equals(node.getLabel())));
+			final int hsb = getHsb(node, focused, p.view);
+			g2.setColor(new Color(Colors.hsbToRgb(hsb)));
+		}
 		final int yTop = surface.getHeight()-1-(depth+1)*surface.getHeight()/height;
 		final int yBottom = surface.getHeight()-1-(depth)*surface.getHeight()/height;
-		final int h = yBottom-yTop-getVerticalGap();
+		final int h = yBottom-yTop-p.verticalGap;
 		g2.fillRect(x+gap, yTop, w-gap, h);
+		if (plan.isTruncated(entry)) {
+			g2.setColor(TRUNCATION_COLOR);
+			g2.fillRect(x+gap, yTop, w-gap, Math.min(h, TRUNCATION_MARK_SIZE));
+		}
 
 		// name
-		if (getShowLabels()) {
+		if (p.showLabels) {
 			g2.setColor(Color.WHITE);
 			final int cx = x+w/2;
 			final int cy = yTop+h/2;
-			final String label = ""+getView().getLabelAttribute().getValue(node); 
+			final String label = getLabel(plan, entry, p.view);
 			final FontMetrics fm = g2.getFontMetrics();
 			final float labelWidth = (float)fm.getStringBounds(label, g2).getWidth();
 			final int labelOffset = fm.getHeight()/2-fm.getDescent();
 			final Shape clip = g2.getClip();
-			g2.setClip(x, yTop, w, h);
+			g2.clipRect(x, yTop, w, h);
 			g2.drawString(label, cx-labelWidth/2, cy+labelOffset);
 			g2.setClip(clip);
 		}
-		
-		// children
-		long sum = 0;
-		for (int c = 0; c<node.getChildCount(); c++) {
-			final long childValue = sizeMetric.evaluate(node.getChild(c));
-			final int childLeftX = (int)(x+(w*sum/size));
-			final int childRightX = (int)(x+(w*(sum+childValue)/size));
-			final int childWidth = childRightX-childLeftX;
-			renderNode(g2, surface, node.getChild(c), childLeftX, childWidth, height, depth+1);
-			sum += childValue;
-		}
 	}
 
 }
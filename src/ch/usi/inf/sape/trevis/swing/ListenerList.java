@@ -0,0 +1,110 @@
+/*
+ * This file is licensed to You under the "Simplified BSD License".
+ * You may not use this software except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.opensource.org/licenses/bsd-license.php
+ *
+ * See the COPYRIGHT file distributed with this work for information
+ * regarding copyright ownership.
+ */
+package ch.usi.inf.sape.trevis.swing;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+
+/**
+ * A ListenerList holds strongly and weakly referenced listeners.
+ * 
+ * A weakly referenced listener is dropped as soon as it has been garbage collected
+ * (when the list is iterated, or when the next listener gets added, 
+ * so the list stays bounded even if it never notifies).
+ * This is meant for listeners of short-lived objects (e.g., the actions in a popup menu),
+ * which must not be kept alive by the (long-lived) object they observe.
+ * An object registering a weak listener has to keep a strong reference to that listener itself.
+ * 
+ * Iteration happens over a snapshot of the live listeners,
+ * so listeners may be added or removed while notifying.
+ */
+final class ListenerList<L> implements Iterable<L> {
+
+	private final CopyOnWriteArrayList<Object> entries; // L or WeakReference<L>
+	private final ReferenceQueue<Object> collected; // the WeakReferences whose listeners have been collected
+	
+	
+	public ListenerList() {
+		entries = new CopyOnWriteArrayList<Object>();
+		collected = new ReferenceQueue<Object>();
+	}
+	
+	public void add(final L li) {
+		purge();
+		entries.add(li);
+	}
+	
+	public void addWeak(final L li) {
+		purge();
+		entries.add(new WeakReference<L>(li, collected));
+	}
+	
+	/**
+	 * Drop the weak entries whose listeners have been collected.
+	 */
+	private void purge() {
+		Reference<?> reference = collected.poll();
+		while (reference!=null) {
+			entries.remove(reference);
+			reference = collected.poll();
+		}
+	}
+	
+	public void remove(final L li) {
+		for (final Object entry : entries) {
+			if (entry==li || (entry instanceof WeakReference && ((WeakReference<?>)entry).get()==li)) {
+				entries.remove(entry);
+				return;
+			}
+		}
+	}
+	
+	/**
+	 * The number of registered listeners (including weak ones that may already have been collected).
+	 */
+	public int size() {
+		return entries.size();
+	}
+	
+	/**
+	 * Iterate over a snapshot of the live listeners, dropping the collected ones.
+	 */
+	@SuppressWarnings("unchecked")
+	public Iterator<L> iterator() {
+		final ArrayList<L> live = new ArrayList<L>(entries.size());
+		ArrayList<Object> dead = null;
+		for (final Object entry : entries) {
+			if (entry instanceof WeakReference) {
+				final L li = ((WeakReference<L>)entry).get();
+				if (li==null) {
+					if (dead==null) {
+						dead = new ArrayList<Object>();
+					}
+					dead.add(entry);
+				} else {
+					live.add(li);
+				}
+			} else {
+				live.add((L)entry);
+			}
+		}
+		if (dead!=null) {
+			entries.removeAll(dead);
+		}
+		return live.iterator();
+	}
+	
+}
@@ -10,9 +10,9 @@
  */
 package ch.usi.inf.sape.trevis.swing;
 
-import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import ch.usi.inf.sape.trevis.model.attribute.BooleanAttribute;
 import ch.usi.inf.sape.trevis.model.attribute.DoubleAttribute;
@@ -58,21 +58,60 @@ import ch.usi.inf.sape.trevis.model.attribute.StringAttribute;
  * svp.addString("Matthew");
  * </code>
  * 
+ * Properties of type Integer, Long, Double, and Boolean store their value in a primitive field,
+ * so the typed accessors (e.g., getInt()) do not unbox.
+ * All values are stored in volatile fields, and vectors are copy-on-write lists,
+ * so a Property can be read by background (e.g., rendering) threads
+ * while it is being modified on the event dispatch thread.
+ * Setting a scalar Property to its current value does not notify the listeners.
+ * 
  * @author Matthias.Hauswirth@usi.ch
  */
 public final class Property {
 
+	/**
+	 * How the value of a Property is stored.
+	 */
+	private static enum Storage {
+		OBJECT, INT, LONG, DOUBLE, BOOLEAN, VECTOR;
+		
+		public static Storage forType(final Class<?> type) {
+			if (type.isArray()) {
+				return VECTOR;
+			} else if (type==Integer.class) {
+				return INT;
+			} else if (type==Long.class) {
+				return LONG;
+			} else if (type==Double.class) {
+				return DOUBLE;
+			} else if (type==Boolean.class) {
+				return BOOLEAN;
+			} else {
+				return OBJECT;
+			}
+		}
+	}
+	
 	private final String key;
 	private final String name;
 	private final Class<?> type;
-	private Object value;
-	private final ArrayList<PropertyListener> listeners;
+	private final Storage storage;
+	// scalar storage (only the field corresponding to storage is used)
+	private volatile Object value;
+	private volatile int intValue;
+	private volatile long longValue;
+	private volatile double doubleValue;
+	private volatile boolean booleanValue;
+	// vector storage
+	private final CopyOnWriteArrayList<Object> values;
+	private final ListenerList<PropertyListener> listeners;
 	
 	
 	public Property(final String key, final String name, final Class<?> type, final Object initialValue) {
 		this.key = key;
 		this.name = name;
 		this.type = type;
+		storage = Storage.forType(type);
 		if (initialValue==null) {
 			throw new IllegalArgumentException("Initial value of property '"+key+"' must not be null");
 		}
@@ -83,23 +122,16 @@ public final class Property {
 			if (type.getComponentType()!=initialValue.getClass().getComponentType()) {
 				throw new IllegalArgumentException("Initial value of property '"+key+"' must be a vector of '"+type.getComponentType());
 			}
-			value = new ArrayList<Object>(Arrays.asList((Object[])initialValue));
-			/*
-			System.out.println("Initial value of vector property '"+name+"': ");
-			System.out.println("  value: "+value);
-			System.out.println("  size: "+((ArrayList)value).size());
-			if (((ArrayList)value).size()>0) {
-				System.out.println("  e0: "+((ArrayList)value).get(0));
-			}
-			*/
+			values = new CopyOnWriteArrayList<Object>(Arrays.asList((Object[])initialValue));
 		} else {
 			if (initialValue.getClass().isArray()) {
 				throw new IllegalArgumentException("Initial value of property '"+key+"' must be a scalar");			
 			}
 			ensureCompatibleScalarType(initialValue);
-			value = initialValue;			
+			store(initialValue);
+			values = null;
 		}
-		listeners = new ArrayList<PropertyListener>();
+		listeners = new ListenerList<PropertyListener>();
 	}
 	
 	public String getKey() {
@@ -111,7 +143,7 @@ public final class Property {
 	}
 	
 	public boolean isVector() {
-		return type.isArray();
+		return storage==Storage.VECTOR;
 	}
 	
 	public Class<?> getType() {
@@ -159,64 +191,151 @@ public final class Property {
 			throw new IllegalStateException("Storing a value of type '"+value.getClass().getSimpleName()+"' into vector property '"+key+"' of type '"+type.getSimpleName()+"'");
 		}
 	}
+	
+	
+	//--- scalar storage
+	private void store(final Object value) {
+		switch (storage) {
+		case INT:
+			intValue = (Integer)value;
+			break;
+		case LONG:
+			longValue = (Long)value;
+			break;
+		case DOUBLE:
+			doubleValue = (Double)value;
+			break;
+		case BOOLEAN:
+			booleanValue = (Boolean)value;
+			break;
+		default:
+			this.value = value;
+		}
+	}
+	
+	private Object load() {
+		switch (storage) {
+		case INT:
+			return intValue;
+		case LONG:
+			return longValue;
+		case DOUBLE:
+			return doubleValue;
+		case BOOLEAN:
+			return booleanValue;
+		default:
+			return value;
+		}
+	}
 		
 	
+	/**
+	 * Replace the value of a Property stored as an OBJECT,
+	 * notifying the listeners only if the value actually changed.
+	 */
+	private void replace(final Object value) {
+		if (value==this.value || (value!=null && value.equals(this.value))) {
+			return;
+		}
+		this.value = value;
+		firePropertyChanged();
+	}
+	
+	
 	//--- scalar accessors
 	// generic getter and setter
 	public Object getValue() {
 		ensureScalar();
-		return value;
+		return load();
 	}
 	
 	public void setValue(final Object value) {
 		ensureCompatibleScalarType(value);
-		this.value = value;
-		firePropertyChanged();
+		if (!value.equals(load())) {
+			store(value);
+			firePropertyChanged();
+		}
 	}
 	
 	// typed getters and setters
 	public int getInt() {
+		if (storage==Storage.INT) {
+			return intValue;
+		}
 		ensureScalarType(Integer.class);
 		return (Integer)value;
 	}
 	
 	public void setInt(final int value) {
-		ensureScalarType(Integer.class);
-		this.value = value;
-		firePropertyChanged();
+		if (storage==Storage.INT) {
+			if (intValue!=value) {
+				intValue = value;
+				firePropertyChanged();
+			}
+		} else {
+			ensureScalarType(Integer.class);
+			replace(value);
+		}
 	}
 	
 	public long getLong() {
+		if (storage==Storage.LONG) {
+			return longValue;
+		}
 		ensureScalarType(Long.class);
 		return (Long)value;
 	}
 	
 	public void setLong(final long value) {
-		ensureScalarType(Long.class);
-		this.value = value;
-		firePropertyChanged();
+		if (storage==Storage.LONG) {
+			if (longValue!=value) {
+				longValue = value;
+				firePropertyChanged();
+			}
+		} else {
+			ensureScalarType(Long.class);
+			replace(value);
+		}
 	}
 	
 	public double getDouble() {
+		if (storage==Storage.DOUBLE) {
+			return doubleValue;
+		}
 		ensureScalarType(Double.class);
 		return (Double)value;
 	}
 
 	public void setDouble(final double value) {
-		ensureScalarType(Double.class);
-		this.value = value;
-		firePropertyChanged();
+		if (storage==Storage.DOUBLE) {
+			if (Double.compare(doubleValue, value)!=0) {
+				doubleValue = value;
+				firePropertyChanged();
+			}
+		} else {
+			ensureScalarType(Double.class);
+			replace(value);
+		}
 	}
 
 	public boolean getBoolean() {
+		if (storage==Storage.BOOLEAN) {
+			return booleanValue;
+		}
 		ensureScalarType(Boolean.class);
 		return (Boolean)value;
 	}
 	
 	public void setBoolean(final boolean value) {
-		ensureScalarType(Boolean.class);
-		this.value = value;
-		firePropertyChanged();
+		if (storage==Storage.BOOLEAN) {
+			if (booleanValue!=value) {
+				booleanValue = value;
+				firePropertyChanged();
+			}
+		} else {
+			ensureScalarType(Boolean.class);
+			replace(value);
+		}
 	}
 
 	public String getString() {
@@ -226,8 +345,7 @@ public final class Property {
 	
 	public void setString(final String value) {
 		ensureScalarType(String.class);
-		this.value = value;
-		firePropertyChanged();
+		replace(value);
 	}
 	
 	public LongAttribute getLongAttribute() {
@@ -237,8 +355,7 @@ public final class Property {
 	
 	public void setLongAttribute(final LongAttribute value) {
 		ensureScalarType(LongAttribute.class);
-		this.value = value;
-		firePropertyChanged();
+		replace(value);
 	}
 
 	public DoubleAttribute getDoubleAttribute() {
@@ -248,8 +365,7 @@ public final class Property {
 	
 	public void setDoubleAttribute(final DoubleAttribute value) {
 		ensureScalarType(DoubleAttribute.class);
-		this.value = value;
-		firePropertyChanged();
+		replace(value);
 	}
 
 	public BooleanAttribute getBooleanAttribute() {
@@ -259,8 +375,7 @@ public final class Property {
 	
 	public void setBooleanAttribute(final BooleanAttribute value) {
 		ensureScalarType(BooleanAttribute.class);
-		this.value = value;
-		firePropertyChanged();
+		replace(value);
 	}
 
 	public StringAttribute getStringAttribute() {
@@ -270,8 +385,7 @@ public final class Property {
 	
 	public void setStringAttribute(final StringAttribute value) {
 		ensureScalarType(StringAttribute.class);
-		this.value = value;
-		firePropertyChanged();
+		replace(value);
 	}
 
 
@@ -279,127 +393,126 @@ public final class Property {
 	// type-independent methods
 	public int getLength() {
 		ensureVector();
-		if (value==null) {
-			return 0;
-		}
-		return ((ArrayList<Object>)value).size();
+		return values.size();
 	}
 	
 	public void clear() {
 		ensureVector();
-		value = new ArrayList<Object>();
-		firePropertyChanged();
+		if (!values.isEmpty()) {
+			values.clear();
+			firePropertyChanged();
+		}
 	}
 	
 	// generic getter and adder
 	public List<Object> getValues() {
 		ensureVector();
-		return (ArrayList<Object>)value;
+		return values;
 	}
 	
 	public void addValue(final Object element) {
 		ensureCompatibleVectorType(element);
-		((List<Object>)value).add(element);
+		values.add(element);
 		firePropertyChanged();
 	}
 	
 	// typed getters and adders
 	public List<Integer> getInts() {
 		ensureVectorType(Integer[].class);
-		return (List<Integer>)value;
+		return (List<Integer>)(List<?>)values;
 	}
 	
 	public void addInt(final int element) {
 		ensureVectorType(Integer[].class);
-		((List<Integer>)value).add(element);
+		values.add(element);
 		firePropertyChanged();
 	}
 	
 	public List<Long> getLongs() {
 		ensureVectorType(Long[].class);
-		return (List<Long>)value;
+		return (List<Long>)(List<?>)values;
 	}
 	
 	public void addLong(final long element) {
 		ensureVectorType(Long[].class);
-		((List<Long>)value).add(element);
+		values.add(element);
 		firePropertyChanged();
 	}
 	
 	public List<Double> getDoubles() {
 		ensureVectorType(Double[].class);
-		return (List<Double>)value;
+		return (List<Double>)(List<?>)values;
 	}
 
 	public void addDouble(final double element) {
 		ensureVectorType(Double[].class);
-		((List<Double>)value).add(element);
+		values.add(element);
 		firePropertyChanged();
 	}
 
 	public List<Boolean> getBooleans() {
 		ensureVectorType(Boolean[].class);
-		return (List<Boolean>)value;
+		return (List<Boolean>)(List<?>)values;
 	}
 	
 	public void addBoolean(final boolean element) {
 		ensureVectorType(Boolean[].class);
-		((List<Boolean>)value).add(element);
+		values.add(element);
 		firePropertyChanged();
 	}
 
 	public List<String> getStrings() {
 		ensureVectorType(String[].class);
-		return (List<String>)value;
+		return (List<String>)(List<?>)values;
 	}
 	
 	public void addString(final String element) {
 		ensureVectorType(String[].class);
-		((List<String>)value).add(element);
+		values.add(element);
 		firePropertyChanged();
 	}
 	
 	public List<LongAttribute> getLongAttributes() {
 		ensureVectorType(LongAttribute[].class);
-		return (List<LongAttribute>)value;
+		return (List<LongAttribute>)(List<?>)values;
 	}
 	
 	public void addLongAttribute(final LongAttribute element) {
 		ensureVectorType(LongAttribute[].class);
-		((List<LongAttribute>)value).add(element);
+		values.add(element);
 		firePropertyChanged();
 	}
 	
 	public List<DoubleAttribute> getDoubleAttributes() {
 		ensureVectorType(DoubleAttribute[].class);
-		return (List<DoubleAttribute>)value;
+		return (List<DoubleAttribute>)(List<?>)values;
 	}
 	
 	public void addDoubleAttribute(final DoubleAttribute element) {
 		ensureVectorType(DoubleAttribute[].class);
-		((List<DoubleAttribute>)value).add(element);
+		values.add(element);
 		firePropertyChanged();
 	}
 	
 	public List<BooleanAttribute> getBooleanAttributes() {
 		ensureVectorType(BooleanAttribute[].class);
-		return (List<BooleanAttribute>)value;
+		return (List<BooleanAttribute>)(List<?>)values;
 	}
 	
 	public void addBooleanAttribute(final BooleanAttribute element) {
 		ensureVectorType(BooleanAttribute[].class);
-		((List<BooleanAttribute>)value).add(element);
+		values.add(element);
 		firePropertyChanged();
 	}
 	
 	public List<StringAttribute> getStringAttributes() {
 		ensureVectorType(StringAttribute[].class);
-		return (List<StringAttribute>)value;
+		return (List<StringAttribute>)(List<?>)values;
 	}
 	
 	public void addStringAttribute(final StringAttribute element) {
 		ensureVectorType(StringAttribute[].class);
-		((List<StringAttribute>)value).add(element);
+		values.add(element);
 		firePropertyChanged();
 	}
 	
@@ -409,7 +522,7 @@ public final class Property {
 		System.out.println("Key:   "+key);
 		System.out.println("Name:  "+name);
 		System.out.println("Type:  "+type);
-		System.out.println("Value: "+value);
+		System.out.println("Value: "+(isVector()?values:load()));
 	}
 	
 	
@@ -418,6 +531,15 @@ public final class Property {
 		listeners.add(li);
 	}
 	
+	/**
+	 * Register a listener that does not keep itself alive.
+	 * The caller has to hold a strong reference to the listener as long as it wants notifications
+	 * (e.g., a menu action registering its listener this way does not leak once the menu is discarded).
+	 */
+	public void addWeakPropertyListener(final PropertyListener li) {
+		listeners.addWeak(li);
+	}
+	
 	public void removePropertyListener(final PropertyListener li) {
 		listeners.remove(li);
 	}
@@ -21,7 +21,6 @@ import javax.swing.JMenu;
 import javax.swing.JPopupMenu;
 
 import ch.usi.inf.sape.trevis.model.ContextTreeNode;
-import ch.usi.inf.sape.trevis.model.attribute.LongAttribute;
 import ch.usi.inf.sape.trevis.swing.action.SetIntPropertyAction;
 import ch.usi.inf.sape.util.Colors;
 
@@ -36,6 +35,24 @@ public final class RadialRenderer extends TreeViewRenderer {
 	public static final String CENTER_SIZE = "CENTER_SIZE";
 	public static final String RING_WIDTH = "RING_WIDTH";
 
+	/**
+	 * The parameters of this renderer, compiled once per Configuration change.
+	 */
+	private static final class Parameters {
+		private final RenderParameters view;
+		private final int centerSize;
+		private final int ringWidth;
+		
+		public Parameters(final RenderParameters view) {
+			this.view = view;
+			final ConfigurationSnapshot snapshot = view.getSnapshot();
+			centerSize = snapshot.getInt(CENTER_SIZE);
+			ringWidth = snapshot.getInt(RING_WIDTH);
+		}
+	}
+	
+	private Parameters parameters;
+	
 	
 	public RadialRenderer() {
 	}
@@ -51,6 +68,12 @@ public final class RadialRenderer extends TreeViewRenderer {
 		configuration.addPropertyIfNotPresent(new Property(CENTER_SIZE, "Center size", Integer.class, 50));
 		configuration.addPropertyIfNotPresent(new Property(RING_WIDTH, "Ring width", Integer.class, 5));
 	}
+	
+	@Override
+	public void declareDependencies(final DependencyRegistry registry) {
+		registry.declare(CENTER_SIZE, CacheTier.LAYOUT);
+		registry.declare(RING_WIDTH, CacheTier.LAYOUT);
+	}
 		
 	/**
 	 * Convenience method delegating to TreeViewConfiguration.
@@ -81,6 +104,16 @@ public final class RadialRenderer extends TreeViewRenderer {
 	}
 	
 	
+	private Parameters getParameters(final RenderParameters view) {
+		Parameters p = parameters;
+		if (p==null || p.view!=view) {
+			p = new Parameters(view);
+			parameters = p;
+		}
+		return p;
+	}
+	
+	
 	//--- statistics
 	@Override
 	public void recomputeStatistics() {
@@ -100,161 +133,138 @@ public final class RadialRenderer extends TreeViewRenderer {
 	}
 	
 
+	/**
+	 * The outermost rings have the highest resolution.
+	 */
+	@Override
+	public int getResolution(final Surface surface) {
+		return (int)(Math.PI*Math.min(surface.getWidth(), surface.getHeight()));
+	}
+	
+
 	//--- hit testing
 	@Override
-	public ContextTreeNode findNode(final int mx, final int my) {
-		final ContextTreeNode top = getTop();
-		if (top==null) {
-			return null;
-		}
+	public int findEntry(final RenderPlan plan, final int mx, final int my, final RenderParameters parameters) {
+		final Parameters p = getParameters(parameters);
 		final int x = mx-getWidth()/2;
 		final int y = my-getHeight()/2;
 		final double radius = Math.sqrt(x*x+y*y);
 		final double angleRadians = Math.atan2(-y, x);
 		double angleDegrees = angleRadians/Math.PI/2*360;
 		angleDegrees = angleDegrees<0?angleDegrees+360:angleDegrees;
-		final int centerSize = getCenterSize();
-		final int ringWidth = getRingWidth();
+		final int centerSize = p.centerSize;
+		final int ringWidth = p.ringWidth;
 		final int expectedLevel = (int)((radius-centerSize/2)/ringWidth)+1;
 		
 		if (expectedLevel<=0) {
-			return top;
-		}
-		final LongAttribute angleMetric = getView().getSizeAttribute();
-		long sum = 0;
-		for (int c = 0; c<top.getChildCount(); c++) {
-			final long cc = angleMetric.evaluate(top.getChild(c));
-			final double sa = 360.0*sum/angleMetric.evaluate(top); //NORMALIZATION BY PARENT
-			final double a = 360.0*cc/angleMetric.evaluate(top); //NORMALIZATION BY PARENT
-			final ContextTreeNode node = findNode(expectedLevel, angleDegrees, top.getChild(c), 1, sa, a);
-			if (node!=null) {
-				return node;
-			}
-			sum += cc;
+			return 0;
 		}
-		return null;
-	}
-	
-	private ContextTreeNode findNode(final int expectedLevel, final double expectedAngle, final ContextTreeNode node, final int level, final double sa, final double a) {
-		if (level>expectedLevel) {
-			return null;
-		}
-		if (expectedAngle<sa || expectedAngle>sa+a) {
-			return null;
-		}
-		if (expectedLevel==level) {
-			return node;
-		}
-		final LongAttribute angleMetric = getView().getSizeAttribute();
-		long sum = 0;
-		for (int c = 0; c<node.getChildCount(); c++) {
-			final long cc = angleMetric.evaluate(node.getChild(c));
-			final ContextTreeNode child = findNode(expectedLevel, expectedAngle, node.getChild(c), level+1, sa+(a*sum/angleMetric.evaluate(node)), a*cc/angleMetric.evaluate(node)); //NORMALIZATION BY PARENT
-			if (child!=null) {
-				return child;
+		int entry = 1;
+		while (entry<plan.size()) {
+			final double sa = 360.0*plan.getStart(entry);
+			final double a = 360.0*plan.getExtent(entry);
+			if (angleDegrees<sa || angleDegrees>sa+a) {
+				entry = plan.getSubtreeEnd(entry);
+			} else if (plan.getDepth(entry)==expectedLevel) {
+				return entry;
+			} else {
+				entry++;
 			}
-			sum += cc;
 		}
-		return null;
+		return -1;
 	}
 
 	
 	//--- rendering
 	@Override
-	public void renderTree(final Graphics2D g2, final Surface surface) {
+	public void renderTree(final Graphics2D g2, final Surface surface, final RenderPlan plan, final RenderParameters parameters) {
 		final ContextTreeNode root = getRoot();
-		final ContextTreeNode top = getTop();
+		final ContextTreeNode top = plan.getTop();
 		final ContextTreeNode current = getCurrent();
-		final int centerSize = getCenterSize();
-		final int ringWidth = getRingWidth();
-		final LongAttribute angleMetric = getView().getSizeAttribute();
+		final Parameters p = getParameters(parameters);
+		final int centerSize = p.centerSize;
+		final int ringWidth = p.ringWidth;
 		
-		if (top!=null) {
-			final int cx = surface.getWidth()/2;
-			final int cy = surface.getHeight()/2;
-			
-			long sum = 0;
-			for (int c = 0; c<top.getChildCount(); c++) {
-				final long cc = angleMetric.evaluate(top.getChild(c));
-				final double sa = 360.0*sum/angleMetric.evaluate(top); //NORMALIZATION BY PARENT
-				final double a = 360.0*cc/angleMetric.evaluate(top); //NORMALIZATION BY PARENT
-				renderNode(top.getChild(c), 1, sa, a, g2, surface);
-				sum += cc;
-			}
-			
-			final int hsb = getHsb(top, current==top);				
-			g2.setColor(new Color(Colors.hsbToRgb(hsb)));
-			g2.fill(new Ellipse2D.Double(cx-centerSize/2, cy-centerSize/2, centerSize, centerSize));
-			if (ringWidth>2) {
-				g2.setColor(getView().getBackground());
-				g2.draw(new Ellipse2D.Double(cx-centerSize/2, cy-centerSize/2, centerSize, centerSize));
-			}
-			
-			if (root!=top) {
-				g2.setColor(getView().getBackground());
-				g2.fillOval(cx-centerSize/4, cy-centerSize/4, centerSize/2, centerSize/2);
-			}
-			
-			g2.setColor(Color.BLACK);
-			final String label = ""+angleMetric.evaluate(top); //UNNORMALIZED VALUE OF TOP
-			final FontMetrics fm = g2.getFontMetrics();
-			final float labelWidth = (float)fm.getStringBounds(label, g2).getWidth();
-			final int labelOffset = fm.getHeight()/2-fm.getDescent();
-			g2.drawString(label, cx-labelWidth/2, cy+labelOffset);
-			
-			if (getView().isMouseInside()) {
-				g2.setColor(Color.RED);
-				final int x = getView().getMouseX();
-				final int y = getView().getMouseY();
-				g2.drawLine(cx, cy, x, y);
-				final int rx = x-cx;
-				final int ry = y-cy;
-				final double radius = Math.sqrt(rx*rx+ry*ry);
-				final double angleRadians = Math.atan2(-ry, rx);
-				double angleDegrees = angleRadians/Math.PI/2*360;
-				angleDegrees = angleDegrees<0?angleDegrees+360:angleDegrees;
-				g2.draw(new Arc2D.Double(cx-radius, cy-radius, 2*radius, 2*radius, angleDegrees-5, 10, Arc2D.OPEN));
-			}
+		final int cx = surface.getWidth()/2;
+		final int cy = surface.getHeight()/2;
+
+		// in reverse preorder, so each ring is drawn over the rings of its descendants
+		for (int entry = plan.size()-1; entry>0; entry--) {
+			renderNode(p, plan, entry, plan.getDepth(entry), 360.0*plan.getStart(entry), 360.0*plan.getExtent(entry), g2, surface);
+		}
+
+		final int hsb = getHsb(top, current==top, parameters);				
+		g2.setColor(new Color(Colors.hsbToRgb(hsb)));
+		g2.fill(new Ellipse2D.Double(cx-centerSize/2, cy-centerSize/2, centerSize, centerSize));
+		if (ringWidth>2) {
+			g2.setColor(getView().getBackground());
+			g2.draw(new Ellipse2D.Double(cx-centerSize/2, cy-centerSize/2, centerSize, centerSize));
+		}
+		
+		if (root!=top) {
+			g2.setColor(getView().getBackground());
+			g2.fillOval(cx-centerSize/4, cy-centerSize/4, centerSize/2, centerSize/2);
+		}
+		
+		g2.setColor(Color.BLACK);
+		final String label = ""+plan.getSize(0); //UNNORMALIZED VALUE OF TOP
+		final FontMetrics fm = g2.getFontMetrics();
+		final float labelWidth = (float)fm.getStringBounds(label, g2).getWidth();
+		final int labelOffset = fm.getHeight()/2-fm.getDescent();
+		g2.drawString(label, cx-labelWidth/2, cy+labelOffset);
+		
+		if (getView().isMouseInside()) {
+			g2.setColor(Color.RED);
+			final int x = getView().getMouseX();
+			final int y = getView().getMouseY();
+			g2.drawLine(cx, cy, x, y);
+			final int rx = x-cx;
+			final int ry = y-cy;
+			final double radius = Math.sqrt(rx*rx+ry*ry);
+			final double angleRadians = Math.atan2(-ry, rx);
+			double angleDegrees = angleRadians/Math.PI/2*360;
+			angleDegrees = angleDegrees<0?angleDegrees+360:angleDegrees;
+			g2.draw(new Arc2D.Double(cx-radius, cy-radius, 2*radius, 2*radius, angleDegrees-5, 10, Arc2D.OPEN));
 		}
 	}
 
-	private void renderNode(final ContextTreeNode node, final int level, final double sa, final double a, final Graphics2D g, final Surface surface) {
-		final ContextTreeNode root = getRoot();
+	private void renderNode(final Parameters p, final RenderPlan plan, final int entry, final int level, final double sa, final double a, final Graphics2D g, final Surface surface) {
 		final ContextTreeNode current = getCurrent();
 
 		final int width = surface.getWidth();
 		final int height = surface.getHeight();
 		final int cx = width/2;
 		final int cy = height/2;
-		final int centerSize = getCenterSize();
-		final int ringWidth = getRingWidth();
-		final boolean focusSame = getView().getFocusSame();
-		final LongAttribute angleMetric = getView().getSizeAttribute();
+		final int centerSize = p.centerSize;
+		final int ringWidth = p.ringWidth;
+		final boolean focusSame = p.view.getFocusSame();
 		
-		if (angleMetric.evaluate(node) >= getView().getCutoff()*angleMetric.evaluate(root)/1000) {
-			// cut-off at cutoff 1000ths of root's angle
-			final int x = cx-centerSize/2-level*ringWidth;
-			final int y = cy-centerSize/2-level*ringWidth;
-			final int s = centerSize+level*2*ringWidth;
-			long sum = 0;
-			for (int c = 0; c<node.getChildCount(); c++) {
-				final long cc = angleMetric.evaluate(node.getChild(c));
-				renderNode(node.getChild(c), level+1, sa+(a*sum/angleMetric.evaluate(node)), a*cc/angleMetric.evaluate(node), g, surface); //NORMALIZATION BY PARENT
-				sum += cc;
-			}		
-			final int hsb = getHsb(node, node==current || (focusSame && (current!=null && node.getLabel().equals(current.getLabel()))));			
+		final int x = cx-centerSize/2-level*ringWidth;
+		final int y = cy-centerSize/2-level*ringWidth;
+		final int s = centerSize+level*2*ringWidth;
+		final ContextTreeNode node = plan.getNode(entry);
+		if (plan.isTruncated(entry)) {
+			// a thin ring outside, where the children would be
+			final int m = Math.min(ringWidth, TRUNCATION_MARK_SIZE);
+			g.setColor(TRUNCATION_COLOR);
+			g.fill(new Arc2D.Double(x-m, y-m, s+2*m, s+2*m, sa, a, Arc2D.PIE));
+		}
+		if (plan.isAggregate(entry) || isPlaceholder(node)) {
+			g.setColor(getPlaceholderColor(node));
+		} else {
+			final int hsb = getHsb(node, node==current || (focusSame && (current!=null && node.getLabel().equals(current.getLabel()))), p.view);			
 			g.setColor(new Color(Colors.hsbToRgb(hsb)));
-			g.fill(new Arc2D.Double(x, y, s, s, sa, a, Arc2D.PIE));
-			if (ringWidth>2) {
-				g.setColor(getView().getBackground());
-				g.draw(new Arc2D.Double(x, y, s, s, sa, a, Arc2D.OPEN));
-			}
-
+		}
+		g.fill(new Arc2D.Double(x, y, s, s, sa, a, Arc2D.PIE));
+		if (ringWidth>2) {
 			g.setColor(getView().getBackground());
-			final double x1 = cx+(centerSize/2+level*ringWidth)*Math.cos(sa*Math.PI*2/360);
-			final double y1 = cy-(centerSize/2+level*ringWidth)*Math.sin(sa*Math.PI*2/360);
-			g.draw(new Line2D.Double(cx, cy, x1, y1));
+			g.draw(new Arc2D.Double(x, y, s, s, sa, a, Arc2D.OPEN));
 		}
+
+		g.setColor(getView().getBackground());
+		final double x1 = cx+(centerSize/2+level*ringWidth)*Math.cos(sa*Math.PI*2/360);
+		final double y1 = cy-(centerSize/2+level*ringWidth)*Math.sin(sa*Math.PI*2/360);
+		g.draw(new Line2D.Double(cx, cy, x1, y1));
 	}
 	
 }
@@ -0,0 +1,142 @@
+/*
+ * This file is licensed to You under the "Simplified BSD License".
+ * You may not use this software except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.opensource.org/licenses/bsd-license.php
+ *
+ * See the COPYRIGHT file distributed with this work for information
+ * regarding copyright ownership.
+ */
+package ch.usi.inf.sape.trevis.swing;
+
+import java.util.List;
+
+import ch.usi.inf.sape.trevis.model.attribute.BooleanAttribute;
+import ch.usi.inf.sape.trevis.model.attribute.LongAttribute;
+import ch.usi.inf.sape.trevis.model.attribute.StringAttribute;
+
+
+/**
+ * The typed, immutable TreeView parameters for rendering one frame,
+ * compiled from a ConfigurationSnapshot.
+ * 
+ * TreeView hands the same RenderParameters to the renderer until the Configuration changes.
+ * Renderers derive their own parameters from getSnapshot().
+ */
+public final class RenderParameters {
+
+	private final ConfigurationSnapshot snapshot;
+	private final boolean focusSame;
+	private final int cutoff;
+	private final int maxNodes;
+	private final boolean aggregateCutOff;
+	private final boolean compressChains;
+	private final int depthHorizon;
+	private final boolean levelOfDetail;
+	private final LongAttribute sizeAttribute;
+	private final LongAttribute saturationAttribute;
+	private final BooleanAttribute highlightAttribute;
+	private final StringAttribute hueAttribute;
+	private final StringAttribute labelAttribute;
+	private final StringAttribute tooltipAttribute;
+	private final List<StringAttribute> infoLineAttributes;
+	private final boolean showTooltips;
+	private final boolean showInfoOverlay;
+	private final boolean showPropertiesOverlay;
+	
+	
+	public RenderParameters(final ConfigurationSnapshot snapshot) {
+		this.snapshot = snapshot;
+		focusSame = snapshot.getBoolean(TreeView.FOCUS_SAME);
+		cutoff = snapshot.getInt(TreeView.CUTOFF);
+		maxNodes = snapshot.getInt(TreeView.MAX_NODES);
+		aggregateCutOff = snapshot.getBoolean(TreeView.AGGREGATE_CUT_OFF);
+		compressChains = snapshot.getBoolean(TreeView.COMPRESS_CHAINS);
+		depthHorizon = snapshot.getInt(TreeView.DEPTH_HORIZON);
+		levelOfDetail = snapshot.getBoolean(TreeView.LEVEL_OF_DETAIL);
+		sizeAttribute = snapshot.getLongAttribute(TreeView.SIZE_ATTRIBUTE);
+		saturationAttribute = snapshot.getLongAttribute(TreeView.SATURATION_ATTRIBUTE);
+		highlightAttribute = snapshot.getBooleanAttribute(TreeView.HIGHLIGHT_ATTRIBUTE);
+		hueAttribute = snapshot.getStringAttribute(TreeView.HUE_ATTRIBUTE);
+		labelAttribute = snapshot.getStringAttribute(TreeView.LABEL_ATTRIBUTE);
+		tooltipAttribute = snapshot.getStringAttribute(TreeView.TOOLTIP);
+		infoLineAttributes = snapshot.getStringAttributes(TreeView.INFO_LINES);
+		showTooltips = snapshot.getBoolean(TreeView.SHOW_TOOLTIPS);
+		showInfoOverlay = snapshot.getBoolean(TreeView.SHOW_INFO_OVERLAY);
+		showPropertiesOverlay = snapshot.getBoolean(TreeView.SHOW_PROPERTIES_OVERLAY);
+	}
+	
+	public ConfigurationSnapshot getSnapshot() {
+		return snapshot;
+	}
+	
+	public boolean getFocusSame() {
+		return focusSame;
+	}
+	
+	public int getCutoff() {
+		return cutoff;
+	}
+	
+	public int getMaxNodes() {
+		return maxNodes;
+	}
+	
+	public boolean getAggregateCutOff() {
+		return aggregateCutOff;
+	}
+	
+	public boolean getCompressChains() {
+		return compressChains;
+	}
+	
+	public int getDepthHorizon() {
+		return depthHorizon;
+	}
+	
+	public boolean getLevelOfDetail() {
+		return levelOfDetail;
+	}
+	
+	public LongAttribute getSizeAttribute() {
+		return sizeAttribute;
+	}
+	
+	public LongAttribute getSaturationAttribute() {
+		return saturationAttribute;
+	}
+	
+	public BooleanAttribute getHighlightAttribute() {
+		return highlightAttribute;
+	}
+	
+	public StringAttribute getHueAttribute() {
+		return hueAttribute;
+	}
+	
+	public StringAttribute getLabelAttribute() {
+		return labelAttribute;
+	}
+	
+	public StringAttribute getTooltipAttribute() {
+		return tooltipAttribute;
+	}
+	
+	public List<StringAttribute> getInfoLineAttributes() {
+		return infoLineAttributes;
+	}
+	
+	public boolean getShowTooltips() {
+		return showTooltips;
+	}
+	
+	public boolean getShowInfoOverlay() {
+		return showInfoOverlay;
+	}
+	
+	public boolean getShowPropertiesOverlay() {
+		return showPropertiesOverlay;
+	}
+	
+}
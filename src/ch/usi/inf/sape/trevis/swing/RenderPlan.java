@@ -0,0 +1,861 @@
+/*
+ * This file is licensed to You under the "Simplified BSD License".
+ * You may not use this software except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.opensource.org/licenses/bsd-license.php
+ *
+ * See the COPYRIGHT file distributed with this work for information
+ * regarding copyright ownership.
+ */
+package ch.usi.inf.sape.trevis.swing;
+
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+import ch.usi.inf.sape.trevis.model.ContextTreeNode;
+import ch.usi.inf.sape.trevis.model.attribute.HeightAttribute;
+import ch.usi.inf.sape.trevis.model.attribute.LongAttribute;
+
+
+/**
+ * A RenderPlan is the list of nodes a renderer has to show for a given view state
+ * (root, top, size attribute, cutoff, and node budget), in preorder, starting with top.
+ * 
+ * It gets built once per view state, by a single pass over the part of the tree that survives the cutoff,
+ * evaluating the size attribute once per node.
+ * The renderers then iterate over the plan (for rendering and hit testing)
+ * instead of traversing the tree and re-evaluating the size of every node.
+ * 
+ * Entries are identified by their index (0 is top).
+ * The entries of the subtree of entry i are i+1 .. getSubtreeEnd(i)-1,
+ * so a renderer can skip a subtree (e.g., because it is too small on screen) in constant time.
+ * Extents are normalized (to the size of top, or to the size of the parent),
+ * so a plan does not depend on the size of the surface.
+ * 
+ * If cut-off nodes are aggregated (RenderParameters.getAggregateCutOff()),
+ * the children of a node that are cut off get merged into a single aggregate entry
+ * (sized by their sum, placed after the remaining children, which get packed),
+ * so their combined mass stays visible, while rendering and hit testing only handle a single entry.
+ * 
+ * If single-child chains are compressed (RenderParameters.getCompressChains()),
+ * a maximal chain of single-child nodes becomes a single entry
+ * (the node starting the chain, with the children of the node ending it),
+ * so renderers draw (and label) it as one element instead of one element per link.
+ * The chains come from a ChainIndex, which is computed once per tree.
+ * 
+ * With a depth horizon (RenderParameters.getDepthHorizon()), the plan only contains the levels above the horizon 
+ * (relative to top, so the horizon moves along when zooming).
+ * The deeper levels are not traversed; entries whose children got cut by the horizon are marked as truncated.
+ * 
+ * A plan can be built for a level of detail (see TreeView.getRenderPlan(Surface)):
+ * at level L, the children of a node that would get less than 1/2^L of the extent of top 
+ * get merged into an aggregate entry (a block summarizing their subtrees), and their subtrees are not visited.
+ * A renderer with a resolution of at most 2^L units (e.g., pixels) thus cannot tell the difference,
+ * but the cost of building and rendering depends on the resolution, not on the size of the tree.
+ * 
+ * With a node budget (RenderParameters.getMaxNodes()), the plan contains at most that many nodes:
+ * the largest ones, selected best-first from top (a node can only be selected after its parent),
+ * so the subtrees below the budget are never visited.
+ * Render and hit-testing costs thus stay bounded independently of the size of the tree.
+ * 
+ * When only the values of some nodes change (not the structure of the tree), 
+ * update() derives the new plan from the old one, re-laying out only the children of the changed nodes,
+ * and records the entries that changed, so the view can repaint just those.
+ * 
+ * A RenderPlan is immutable once built, and thus can be used by any thread.
+ */
+public final class RenderPlan {
+
+	private static final int INITIAL_CAPACITY = 64;
+	
+	private final ContextTreeNode root;
+	private final ContextTreeNode top;
+	private final LongAttribute sizeAttribute;
+	private final int cutoff;
+	private final int maxNodes;
+	private final boolean aggregateCutOff;
+	private final boolean compressChains;
+	private final ChainIndex chains; // null if chains are not compressed
+	private final int depthHorizon;
+	private final int detailLevel; // 0 for an exact plan
+	private final double granularity; // minimum extent (fraction of the size of top) of an entry, 0 for an exact plan
+	private final long cutoffSize;
+	private final IdentityHashMap<ContextTreeNode, Long> selected; // null if there is no node budget
+	
+	private int count;
+	private ContextTreeNode[] nodes;
+	private int[] parents; // index of the parent entry, -1 for top
+	private int[] depths; // relative to top
+	private int[] aggregateCounts; // number of children merged into an aggregate entry, 0 for node entries
+	private ContextTreeNode[] chainEnds; // last node of a compressed chain, null for other entries
+	private int[] chainLengths; // number of nodes in a compressed chain, 0 for other entries
+	private boolean[] truncated; // whether children got cut by the depth horizon
+	private int[] subtreeEnds; // index after the last entry of the subtree
+	private long[] sizes;
+	private long[] childrenSizes; // sum of the sizes of all children (including the ones cut off)
+	private double[] starts; // fraction of the size of top
+	private double[] extents; // fraction of the size of top
+	private double[] relativeStarts; // fraction of the size of the parent
+	private double[] relativeExtents; // fraction of the size of the parent
+	private int maxDepth;
+	private int treeHeight; // height of the subtree of top (including the nodes not in the plan), 0 if not computed yet
+	private int[] updatedEntries; // entries that differ from the plan this one got derived from by update()
+	private int updatedCount;
+	
+	
+	/**
+	 * A node that may be selected next when building a plan with a node budget.
+	 */
+	private static final class Candidate implements Comparable<Candidate> {
+		private final ContextTreeNode node;
+		private final long size;
+		private final int depth; // relative to top
+		
+		public Candidate(final ContextTreeNode node, final long size, final int depth) {
+			this.node = node;
+			this.size = size;
+			this.depth = depth;
+		}
+		
+		public int compareTo(final Candidate other) {
+			// largest first
+			return size<other.size?1:(size>other.size?-1:0);
+		}
+	}
+	
+	
+	/**
+	 * The frames of the explicit stack used when building a plan:
+	 * for each entry whose children are being added, the next child to visit,
+	 * the sum of the sizes of the children visited so far (except the aggregated ones),
+	 * and the number and sum of the sizes of the children to aggregate.
+	 */
+	private static final class Frames {
+		private int[] entries = new int[INITIAL_CAPACITY];
+		private int[] cursors = new int[INITIAL_CAPACITY];
+		private long[] sums = new long[INITIAL_CAPACITY];
+		private long[] othersSizes = new long[INITIAL_CAPACITY];
+		private int[] others = new int[INITIAL_CAPACITY];
+		private int size;
+		
+		public boolean isEmpty() {
+			return size==0;
+		}
+		
+		public void push(final int entry) {
+			if (size==entries.length) {
+				entries = grow(entries);
+				cursors = grow(cursors);
+				sums = grow(sums);
+				othersSizes = grow(othersSizes);
+				others = grow(others);
+			}
+			entries[size] = entry;
+			cursors[size] = 0;
+			sums[size] = 0;
+			othersSizes[size] = 0;
+			others[size] = 0;
+			size++;
+		}
+		
+		public void pop() {
+			size--;
+		}
+		
+		private static int[] grow(final int[] a) {
+			final int[] b = new int[2*a.length];
+			System.arraycopy(a, 0, b, 0, a.length);
+			return b;
+		}
+		
+		private static long[] grow(final long[] a) {
+			final long[] b = new long[2*a.length];
+			System.arraycopy(a, 0, b, 0, a.length);
+			return b;
+		}
+	}
+	
+	
+	/**
+	 * Build the plan for the given view state.
+	 * Nodes smaller than cutoff 1000ths of the size of root, or of size 0, are cut off 
+	 * (together with their subtrees); top itself is always part of the plan.
+	 * The children of a node of size 0 are not part of the plan.
+	 * The chain index is only used if the parameters ask for compressing chains
+	 * (it then has to be the index for root).
+	 */
+	public RenderPlan(final ContextTreeNode root, final ContextTreeNode top, final RenderParameters parameters, final ChainIndex chainIndex) {
+		this(root, top, parameters, chainIndex, 0);
+	}
+	
+	/**
+	 * Build the plan for the given view state, at the given level of detail (0 for an exact plan).
+	 */
+	public RenderPlan(final ContextTreeNode root, final ContextTreeNode top, final RenderParameters parameters, final ChainIndex chainIndex, final int detailLevel) {
+		this.root = root;
+		this.top = top;
+		sizeAttribute = parameters.getSizeAttribute();
+		cutoff = parameters.getCutoff();
+		maxNodes = parameters.getMaxNodes();
+		aggregateCutOff = parameters.getAggregateCutOff();
+		compressChains = parameters.getCompressChains();
+		chains = compressChains?chainIndex:null;
+		depthHorizon = parameters.getDepthHorizon();
+		this.detailLevel = detailLevel;
+		granularity = detailLevel>0?1.0/(1L<<detailLevel):0;
+		cutoffSize = cutoff*sizeAttribute.evaluate(root)/1000;
+		final long topSize = sizeAttribute.evaluate(top);
+		selected = maxNodes>0?selectLargest(topSize):null;
+		nodes = new ContextTreeNode[INITIAL_CAPACITY];
+		parents = new int[INITIAL_CAPACITY];
+		depths = new int[INITIAL_CAPACITY];
+		aggregateCounts = new int[INITIAL_CAPACITY];
+		chainEnds = new ContextTreeNode[INITIAL_CAPACITY];
+		chainLengths = new int[INITIAL_CAPACITY];
+		truncated = new boolean[INITIAL_CAPACITY];
+		subtreeEnds = new int[INITIAL_CAPACITY];
+		sizes = new long[INITIAL_CAPACITY];
+		childrenSizes = new long[INITIAL_CAPACITY];
+		starts = new double[INITIAL_CAPACITY];
+		extents = new double[INITIAL_CAPACITY];
+		relativeStarts = new double[INITIAL_CAPACITY];
+		relativeExtents = new double[INITIAL_CAPACITY];
+		updatedEntries = new int[0];
+		build(topSize);
+	}
+	
+	/**
+	 * Copy the given plan (to get updated by update()).
+	 */
+	private RenderPlan(final RenderPlan plan) {
+		root = plan.root;
+		top = plan.top;
+		sizeAttribute = plan.sizeAttribute;
+		cutoff = plan.cutoff;
+		maxNodes = plan.maxNodes;
+		aggregateCutOff = plan.aggregateCutOff;
+		compressChains = plan.compressChains;
+		chains = plan.chains;
+		depthHorizon = plan.depthHorizon;
+		detailLevel = plan.detailLevel;
+		granularity = plan.granularity;
+		cutoffSize = plan.cutoffSize;
+		selected = plan.selected;
+		count = plan.count;
+		// the structure does not change, so the plans share it
+		nodes = plan.nodes;
+		parents = plan.parents;
+		depths = plan.depths;
+		chainEnds = plan.chainEnds;
+		chainLengths = plan.chainLengths;
+		subtreeEnds = plan.subtreeEnds;
+		aggregateCounts = plan.aggregateCounts.clone();
+		truncated = plan.truncated.clone();
+		sizes = plan.sizes.clone();
+		childrenSizes = plan.childrenSizes.clone();
+		starts = plan.starts.clone();
+		extents = plan.extents.clone();
+		relativeStarts = plan.relativeStarts.clone();
+		relativeExtents = plan.relativeExtents.clone();
+		maxDepth = plan.maxDepth;
+		treeHeight = plan.treeHeight; // the structure of the tree did not change
+		updatedEntries = new int[INITIAL_CAPACITY];
+	}
+	
+	/**
+	 * Select the (at most) maxNodes largest nodes that survive the cutoff, best-first starting from top.
+	 * Only the children of selected nodes are evaluated.
+	 * Nodes beyond the depth horizon are not selected
+	 * (with compressed chains, the depth in the plan is not known yet, so the horizon is ignored here).
+	 */
+	private IdentityHashMap<ContextTreeNode, Long> selectLargest(final long topSize) {
+		final IdentityHashMap<ContextTreeNode, Long> selected = new IdentityHashMap<ContextTreeNode, Long>();
+		final PriorityQueue<Candidate> candidates = new PriorityQueue<Candidate>();
+		candidates.add(new Candidate(top, topSize, 0));
+		while (!candidates.isEmpty() && selected.size()<maxNodes) {
+			final Candidate candidate = candidates.poll();
+			selected.put(candidate.node, candidate.size);
+			if (candidate.size>0 && (depthHorizon<=0 || chains!=null || candidate.depth+1<depthHorizon)) {
+				for (int c=0; c<candidate.node.getChildCount(); c++) {
+					final ContextTreeNode child = candidate.node.getChild(c);
+					final long childSize = sizeAttribute.evaluate(child);
+					if (childSize>0 && childSize>=cutoffSize) {
+						candidates.add(new Candidate(child, childSize, candidate.depth+1));
+					}
+				}
+			}
+		}
+		return selected;
+	}
+	
+	private boolean survives(final ContextTreeNode node, final long size) {
+		return size>0 && size>=cutoffSize && (selected==null || selected.containsKey(node));
+	}
+	
+	/**
+	 * Add the entries of the subtree of top, in preorder.
+	 * Uses an explicit stack (with a frame for each entry whose children are being added),
+	 * so the depth of the tree is not limited by the depth of the call stack.
+	 */
+	private void build(final long topSize) {
+		final Frames frames = new Frames();
+		if (open(top, -1, 0, topSize, 0, 1, 0, 1)) {
+			frames.push(0);
+		}
+		while (!frames.isEmpty()) {
+			final int f = frames.size-1;
+			final int index = frames.entries[f];
+			final ContextTreeNode last = getLast(index);
+			final int c = frames.cursors[f];
+			if (c<last.getChildCount()) {
+				frames.cursors[f] = c+1;
+				final ContextTreeNode child = last.getChild(c);
+				final long childSize = sizeAttribute.evaluate(child);
+				final long size = sizes[index];
+				final double extent = extents[index];
+				if (survives(child, childSize) && extent*childSize/size>=granularity) {
+					final double childRelativeStart = (double)frames.sums[f]/size;
+					final double childRelativeExtent = (double)childSize/size;
+					frames.sums[f] += childSize;
+					final int childIndex = count;
+					if (open(child, index, depths[index]+1, childSize, starts[index]+extent*childRelativeStart, extent*childRelativeExtent, childRelativeStart, childRelativeExtent)) {
+						frames.push(childIndex);
+					}
+				} else if (survives(child, childSize) || (aggregateCutOff && childSize>0)) {
+					// below the level of detail, or cut off and aggregated
+					frames.othersSizes[f] += childSize;
+					frames.others[f]++;
+				} else {
+					frames.sums[f] += childSize;
+				}
+			} else {
+				final long sum = frames.sums[f];
+				final long othersSize = frames.othersSizes[f];
+				final int others = frames.others[f];
+				frames.pop();
+				close(index, sum, othersSize, others);
+			}
+		}
+	}
+	
+	/**
+	 * Add an entry.
+	 * Returns whether its children have to be added (followed by a call to close()).
+	 * If the node starts a chain that gets compressed, the entry represents the whole chain,
+	 * and its children are the children of the end of the chain.
+	 */
+	private boolean open(final ContextTreeNode node, final int parent, final int depth, final long size, final double start, final double extent, final double relativeStart, final double relativeExtent) {
+		final int index = count;
+		ensureCapacity(count+1);
+		nodes[index] = node;
+		parents[index] = parent;
+		depths[index] = depth;
+		aggregateCounts[index] = 0;
+		chainEnds[index] = null;
+		chainLengths[index] = 0;
+		truncated[index] = false;
+		sizes[index] = size;
+		starts[index] = start;
+		extents[index] = extent;
+		relativeStarts[index] = relativeStart;
+		relativeExtents[index] = relativeExtent;
+		count++;
+		maxDepth = Math.max(maxDepth, depth);
+		if (chains!=null) {
+			final ContextTreeNode chainEnd = chains.getChainEnd(node);
+			// only compress a chain that survives as a whole
+			if (chainEnd!=null && survives(chainEnd, sizeAttribute.evaluate(chainEnd))) {
+				chainEnds[index] = chainEnd;
+				chainLengths[index] = chains.getChainLength(node);
+			}
+		}
+		if (size>0 && depthHorizon>0 && depth+1>=depthHorizon) {
+			// the children are beyond the horizon: only find out whether any of them would be shown
+			final ContextTreeNode last = getLast(index);
+			long sum = 0;
+			for (int c=0; c<last.getChildCount(); c++) {
+				final ContextTreeNode child = last.getChild(c);
+				final long childSize = sizeAttribute.evaluate(child);
+				sum += childSize;
+				if (survives(child, childSize) || (aggregateCutOff && childSize>0)) {
+					truncated[index] = true;
+				}
+			}
+			childrenSizes[index] = sum;
+			subtreeEnds[index] = count;
+			return false;
+		} else if (size>0) {
+			return true;
+		} else {
+			childrenSizes[index] = 0;
+			subtreeEnds[index] = count;
+			return false;
+		}
+	}
+	
+	/**
+	 * Finish an entry after all its children have been added,
+	 * adding the aggregate entry for the given number of children that were not added, if any.
+	 */
+	private void close(final int index, final long sum, final long othersSize, final int others) {
+		long childrenSize = sum;
+		if (others>0) {
+			final long size = sizes[index];
+			final double othersRelativeStart = (double)sum/size;
+			final double othersRelativeExtent = (double)othersSize/size;
+			addAggregate(nodes[index], index, depths[index]+1, others, othersSize, starts[index]+extents[index]*othersRelativeStart, extents[index]*othersRelativeExtent, othersRelativeStart, othersRelativeExtent);
+			childrenSize += othersSize;
+		}
+		childrenSizes[index] = childrenSize;
+		subtreeEnds[index] = count;
+	}
+	
+	/**
+	 * Get the node whose children are the children of the given entry 
+	 * (the end of the chain for a compressed chain).
+	 */
+	private ContextTreeNode getLast(final int entry) {
+		return chainEnds[entry]!=null?chainEnds[entry]:nodes[entry];
+	}
+	
+	/**
+	 * Add an entry aggregating the given number of cut-off children of the given node.
+	 */
+	private void addAggregate(final ContextTreeNode node, final int parent, final int depth, final int aggregateCount, final long size, final double start, final double extent, final double relativeStart, final double relativeExtent) {
+		final int index = count;
+		ensureCapacity(count+1);
+		nodes[index] = node;
+		parents[index] = parent;
+		depths[index] = depth;
+		aggregateCounts[index] = aggregateCount;
+		chainEnds[index] = null;
+		chainLengths[index] = 0;
+		truncated[index] = false;
+		sizes[index] = size;
+		childrenSizes[index] = 0;
+		starts[index] = start;
+		extents[index] = extent;
+		relativeStarts[index] = relativeStart;
+		relativeExtents[index] = relativeExtent;
+		count++;
+		subtreeEnds[index] = count;
+		maxDepth = Math.max(maxDepth, depth);
+	}
+	
+	private void ensureCapacity(final int capacity) {
+		if (capacity>nodes.length) {
+			final int newCapacity = Math.max(capacity, 2*nodes.length);
+			final ContextTreeNode[] newNodes = new ContextTreeNode[newCapacity];
+			System.arraycopy(nodes, 0, newNodes, 0, count);
+			nodes = newNodes;
+			final ContextTreeNode[] newChainEnds = new ContextTreeNode[newCapacity];
+			System.arraycopy(chainEnds, 0, newChainEnds, 0, count);
+			chainEnds = newChainEnds;
+			chainLengths = grow(chainLengths, newCapacity);
+			final boolean[] newTruncated = new boolean[newCapacity];
+			System.arraycopy(truncated, 0, newTruncated, 0, count);
+			truncated = newTruncated;
+			parents = grow(parents, newCapacity);
+			depths = grow(depths, newCapacity);
+			aggregateCounts = grow(aggregateCounts, newCapacity);
+			subtreeEnds = grow(subtreeEnds, newCapacity);
+			sizes = grow(sizes, newCapacity);
+			childrenSizes = grow(childrenSizes, newCapacity);
+			starts = grow(starts, newCapacity);
+			extents = grow(extents, newCapacity);
+			relativeStarts = grow(relativeStarts, newCapacity);
+			relativeExtents = grow(relativeExtents, newCapacity);
+		}
+	}
+	
+	private int[] grow(final int[] a, final int capacity) {
+		final int[] b = new int[capacity];
+		System.arraycopy(a, 0, b, 0, count);
+		return b;
+	}
+
+	private long[] grow(final long[] a, final int capacity) {
+		final long[] b = new long[capacity];
+		System.arraycopy(a, 0, b, 0, count);
+		return b;
+	}
+
+	private double[] grow(final double[] a, final int capacity) {
+		final double[] b = new double[capacity];
+		System.arraycopy(a, 0, b, 0, count);
+		return b;
+	}
+	
+	
+	//--- incremental update
+	/**
+	 * Derive the plan for the same view state after the values of the given changed nodes changed in place
+	 * (the structure of the tree did not).
+	 * The affected nodes are the changed nodes and all their ancestors
+	 * (so they form paths from root down to the changes, whose inclusive sizes may have changed along).
+	 * Only the entries on those paths get re-evaluated, only their children get laid out again,
+	 * and only the subtrees of the entries that moved (relative to their parent) get new extents.
+	 * (Deriving the plan still copies the arrays of the plan, but evaluates no other nodes.)
+	 * 
+	 * An entry counts as updated (see getUpdatedEntry()) if its size, extent, or aggregate count changed,
+	 * or if its node is one of the changed nodes (so its color may have changed).
+	 * The entries of both plans correspond by index, so the old geometry of an updated entry is the one in this plan.
+	 * 
+	 * Returns null if the plan has to be rebuilt instead:
+	 * if the size of top changed (so every entry moves),
+	 * if the change affects which nodes the plan contains (e.g., a node now survives the cutoff),
+	 * or for plans whose selection depends on the sizes of all nodes (plans with a node budget or a level of detail).
+	 */
+	public RenderPlan update(final Set<ContextTreeNode> affectedNodes, final Set<ContextTreeNode> changedNodes) {
+		if (selected!=null || granularity>0) {
+			return null;
+		}
+		if (cutoff>0 && affectedNodes.contains(root) && cutoff*sizeAttribute.evaluate(root)/1000!=cutoffSize) {
+			return null;
+		}
+		if (affectedNodes.contains(top) && sizeAttribute.evaluate(top)!=sizes[0]) {
+			return null;
+		}
+		final RenderPlan plan = new RenderPlan(this);
+		if (affectedNodes.contains(top) && !plan.relayout(affectedNodes, changedNodes)) {
+			return null;
+		}
+		return plan;
+	}
+	
+	/**
+	 * Re-evaluate the entries of the affected nodes (starting from top, following the paths down to the changes), 
+	 * lay out their children again, and then recompute the extents of the subtrees that moved.
+	 * Returns false if the set of entries would change.
+	 */
+	private boolean relayout(final Set<ContextTreeNode> affectedNodes, final Set<ContextTreeNode> changedNodes) {
+		final Frames pending = new Frames();
+		final Frames moved = new Frames(); // entries whose position relative to their parent changed
+		pending.push(0);
+		while (!pending.isEmpty()) {
+			final int index = pending.entries[pending.size-1];
+			pending.pop();
+			final long oldSize = sizes[index];
+			final long size = sizeAttribute.evaluate(nodes[index]);
+			if ((oldSize==0)!=(size==0)) {
+				return false;
+			}
+			sizes[index] = size;
+			if (size!=oldSize || changedNodes.contains(nodes[index])) {
+				addUpdatedEntry(index);
+			}
+			if (chains!=null) {
+				final ContextTreeNode chainEnd = chains.getChainEnd(nodes[index]);
+				final boolean compressed = chainEnd!=null && survives(chainEnd, sizeAttribute.evaluate(chainEnd));
+				if (compressed!=(chainEnds[index]!=null)) {
+					return false;
+				}
+			}
+			if (size==0) {
+				continue;
+			}
+			final ContextTreeNode last = getLast(index);
+			final int end = subtreeEnds[index];
+			if (depthHorizon>0 && depths[index]+1>=depthHorizon) {
+				long sum = 0;
+				boolean cut = false;
+				for (int c=0; c<last.getChildCount(); c++) {
+					final ContextTreeNode child = last.getChild(c);
+					final long childSize = sizeAttribute.evaluate(child);
+					sum += childSize;
+					if (survives(child, childSize) || (aggregateCutOff && childSize>0)) {
+						cut = true;
+					}
+				}
+				if (childrenSizes[index]!=sum || truncated[index]!=cut) {
+					addUpdatedEntry(index);
+				}
+				childrenSizes[index] = sum;
+				truncated[index] = cut;
+				continue;
+			}
+			// walk the children of the node along with the child entries
+			int entry = index+1;
+			long sum = 0;
+			long othersSize = 0;
+			int others = 0;
+			for (int c=0; c<last.getChildCount(); c++) {
+				final ContextTreeNode child = last.getChild(c);
+				final long childSize = sizeAttribute.evaluate(child);
+				if (survives(child, childSize)) {
+					if (entry>=end || aggregateCounts[entry]>0 || nodes[entry]!=child) {
+						return false;
+					}
+					place(entry, (double)sum/size, (double)childSize/size, moved);
+					sum += childSize;
+					if (affectedNodes.contains(child)) {
+						pending.push(entry);
+					} else if (sizes[entry]!=childSize) {
+						return false; // the sizes of nodes that are not affected must not change
+					}
+					entry = subtreeEnds[entry];
+				} else if (aggregateCutOff && childSize>0) {
+					othersSize += childSize;
+					others++;
+				} else {
+					sum += childSize;
+				}
+			}
+			if (others>0) {
+				if (entry>=end || aggregateCounts[entry]==0) {
+					return false;
+				}
+				if (aggregateCounts[entry]!=others || sizes[entry]!=othersSize) {
+					addUpdatedEntry(entry);
+				}
+				aggregateCounts[entry] = others;
+				sizes[entry] = othersSize;
+				place(entry, (double)sum/size, (double)othersSize/size, moved);
+				entry = subtreeEnds[entry];
+			}
+			if (entry!=end) {
+				return false;
+			}
+			if (childrenSizes[index]!=sum+othersSize) {
+				addUpdatedEntry(index);
+			}
+			childrenSizes[index] = sum+othersSize;
+		}
+		// parents precede their children, so one pass in preorder over each moved subtree propagates the new extents
+		Arrays.sort(moved.entries, 0, moved.size);
+		int propagatedEnd = 0; // end of the last subtree propagated
+		for (int m=0; m<moved.size; m++) {
+			final int movedEntry = moved.entries[m];
+			if (movedEntry<propagatedEnd) {
+				continue;
+			}
+			propagatedEnd = subtreeEnds[movedEntry];
+			for (int index=movedEntry; index<propagatedEnd; index++) {
+				final int parent = parents[index];
+				final double start = starts[parent]+extents[parent]*relativeStarts[index];
+				final double extent = extents[parent]*relativeExtents[index];
+				if (start!=starts[index] || extent!=extents[index]) {
+					starts[index] = start;
+					extents[index] = extent;
+					addUpdatedEntry(index);
+				}
+			}
+		}
+		// in preorder, without duplicates
+		Arrays.sort(updatedEntries, 0, updatedCount);
+		int unique = 0;
+		for (int i=0; i<updatedCount; i++) {
+			if (unique==0 || updatedEntries[unique-1]!=updatedEntries[i]) {
+				updatedEntries[unique++] = updatedEntries[i];
+			}
+		}
+		updatedCount = unique;
+		return true;
+	}
+	
+	/**
+	 * Set the position of the given entry relative to its parent,
+	 * and remember the entry as moved if that changed.
+	 */
+	private void place(final int entry, final double relativeStart, final double relativeExtent, final Frames moved) {
+		if (relativeStart!=relativeStarts[entry] || relativeExtent!=relativeExtents[entry]) {
+			relativeStarts[entry] = relativeStart;
+			relativeExtents[entry] = relativeExtent;
+			moved.push(entry);
+		}
+	}
+	
+	private void addUpdatedEntry(final int entry) {
+		if (updatedCount==updatedEntries.length) {
+			final int[] newUpdatedEntries = new int[2*updatedCount];
+			System.arraycopy(updatedEntries, 0, newUpdatedEntries, 0, updatedCount);
+			updatedEntries = newUpdatedEntries;
+		}
+		updatedEntries[updatedCount++] = entry;
+	}
+	
+	/**
+	 * Get the number of entries that changed (in size, extent, or value) 
+	 * with respect to the plan this plan got derived from by update() (0 for a plan that got built).
+	 */
+	public int getUpdatedEntryCount() {
+		return updatedCount;
+	}
+	
+	/**
+	 * Get the i-th entry (in preorder) that changed with respect to the plan this plan got derived from by update().
+	 */
+	public int getUpdatedEntry(final int i) {
+		return updatedEntries[i];
+	}
+	
+	
+	//--- view state
+	public ContextTreeNode getRoot() {
+		return root;
+	}
+	
+	public ContextTreeNode getTop() {
+		return top;
+	}
+	
+	public LongAttribute getSizeAttribute() {
+		return sizeAttribute;
+	}
+	
+	public int getCutoff() {
+		return cutoff;
+	}
+	
+	public long getCutoffSize() {
+		return cutoffSize;
+	}
+	
+	public int getMaxNodes() {
+		return maxNodes;
+	}
+	
+	public boolean getAggregateCutOff() {
+		return aggregateCutOff;
+	}
+	
+	public boolean getCompressChains() {
+		return compressChains;
+	}
+	
+	public int getDepthHorizon() {
+		return depthHorizon;
+	}
+	
+	public int getDetailLevel() {
+		return detailLevel;
+	}
+	
+	/**
+	 * Was this plan built for the given view state?
+	 */
+	public boolean isFor(final ContextTreeNode root, final ContextTreeNode top, final RenderParameters parameters) {
+		return this.root==root && this.top==top 
+				&& sizeAttribute==parameters.getSizeAttribute() 
+				&& cutoff==parameters.getCutoff() 
+				&& maxNodes==parameters.getMaxNodes()
+				&& aggregateCutOff==parameters.getAggregateCutOff()
+				&& compressChains==parameters.getCompressChains()
+				&& depthHorizon==parameters.getDepthHorizon();
+	}
+	
+	
+	//--- entries
+	/**
+	 * Get the number of entries.
+	 */
+	public int size() {
+		return count;
+	}
+	
+	/**
+	 * Get the node of the given entry.
+	 * For an aggregate entry, this is the node whose cut-off children it aggregates.
+	 */
+	public ContextTreeNode getNode(final int entry) {
+		return nodes[entry];
+	}
+	
+	public boolean isAggregate(final int entry) {
+		return aggregateCounts[entry]>0;
+	}
+	
+	/**
+	 * Get the number of children merged into the given aggregate entry (0 if it is not an aggregate entry).
+	 * Aggregates are either cut-off children (RenderParameters.getAggregateCutOff()), 
+	 * or children below the level of detail.
+	 */
+	public int getAggregateCount(final int entry) {
+		return aggregateCounts[entry];
+	}
+	
+	/**
+	 * Is the given entry a compressed chain of single-child nodes?
+	 */
+	public boolean isChain(final int entry) {
+		return chainEnds[entry]!=null;
+	}
+	
+	/**
+	 * Get the last node of the chain compressed into the given entry (null if it is not a chain entry).
+	 * The first node of the chain is getNode(entry).
+	 */
+	public ContextTreeNode getChainEnd(final int entry) {
+		return chainEnds[entry];
+	}
+	
+	/**
+	 * Get the number of nodes (including both ends) compressed into the given entry (0 if it is not a chain entry).
+	 */
+	public int getChainLength(final int entry) {
+		return chainLengths[entry];
+	}
+	
+	/**
+	 * Did the depth horizon cut the children of the given entry?
+	 */
+	public boolean isTruncated(final int entry) {
+		return truncated[entry];
+	}
+	
+	public int getParent(final int entry) {
+		return parents[entry];
+	}
+	
+	public int getDepth(final int entry) {
+		return depths[entry];
+	}
+	
+	public int getMaxDepth() {
+		return maxDepth;
+	}
+	
+	/**
+	 * Get the height of the subtree of top, including the nodes not in the plan
+	 * (e.g., the ones cut off, so the levels do not change with the cutoff).
+	 * It gets computed (traversing the whole subtree) at most once per plan.
+	 */
+	public int getTreeHeight() {
+		if (treeHeight==0) {
+			treeHeight = (int)new HeightAttribute().evaluate(top);
+		}
+		return treeHeight;
+	}
+	
+	public int getSubtreeEnd(final int entry) {
+		return subtreeEnds[entry];
+	}
+	
+	public long getSize(final int entry) {
+		return sizes[entry];
+	}
+	
+	public long getChildrenSize(final int entry) {
+		return childrenSizes[entry];
+	}
+	
+	public double getStart(final int entry) {
+		return starts[entry];
+	}
+	
+	public double getExtent(final int entry) {
+		return extents[entry];
+	}
+	
+	public double getRelativeStart(final int entry) {
+		return relativeStarts[entry];
+	}
+	
+	public double getRelativeExtent(final int entry) {
+		return relativeExtents[entry];
+	}
+	
+}
@@ -0,0 +1,94 @@
+/*
+ * This file is licensed to You under the "Simplified BSD License".
+ * You may not use this software except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.opensource.org/licenses/bsd-license.php
+ *
+ * See the COPYRIGHT file distributed with this work for information
+ * regarding copyright ownership.
+ */
+package ch.usi.inf.sape.trevis.swing;
+
+import ch.usi.inf.sape.trevis.model.ContextTreeNode;
+
+
+/**
+ * An explicit stack for depth-first traversals of a tree,
+ * holding the path from the start node to the current node,
+ * with the index of the next child to visit for each node on the path.
+ * 
+ * Traversals using a TraversalStack instead of recursion are not limited by the depth of the tree
+ * (deep calling context trees easily have thousands of levels),
+ * and a single stack can be reused for any number of traversals (see clear()).
+ * A TraversalStack is not thread-safe.
+ */
+final class TraversalStack {
+
+	private static final int INITIAL_CAPACITY = 64;
+	
+	private ContextTreeNode[] nodes;
+	private int[] cursors; // index of the next child to visit
+	private int size;
+	
+	
+	public TraversalStack() {
+		nodes = new ContextTreeNode[INITIAL_CAPACITY];
+		cursors = new int[INITIAL_CAPACITY];
+	}
+	
+	public void clear() {
+		for (int i=0; i<size; i++) {
+			nodes[i] = null;
+		}
+		size = 0;
+	}
+	
+	public boolean isEmpty() {
+		return size==0;
+	}
+	
+	public int size() {
+		return size;
+	}
+	
+	public void push(final ContextTreeNode node) {
+		if (size==nodes.length) {
+			final ContextTreeNode[] newNodes = new ContextTreeNode[2*size];
+			System.arraycopy(nodes, 0, newNodes, 0, size);
+			nodes = newNodes;
+			final int[] newCursors = new int[2*size];
+			System.arraycopy(cursors, 0, newCursors, 0, size);
+			cursors = newCursors;
+		}
+		nodes[size] = node;
+		cursors[size] = 0;
+		size++;
+	}
+	
+	public ContextTreeNode pop() {
+		size--;
+		final ContextTreeNode node = nodes[size];
+		nodes[size] = null;
+		return node;
+	}
+	
+	public ContextTreeNode peek() {
+		return nodes[size-1];
+	}
+	
+	/**
+	 * Get the next child to visit of the node on top of the stack (null if all children have been visited).
+	 */
+	public ContextTreeNode nextChild() {
+		final ContextTreeNode node = nodes[size-1];
+		final int cursor = cursors[size-1];
+		if (cursor<node.getChildCount()) {
+			cursors[size-1] = cursor+1;
+			return node.getChild(cursor);
+		} else {
+			return null;
+		}
+	}
+	
+}
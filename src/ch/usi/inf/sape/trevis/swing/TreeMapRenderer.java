@@ -22,7 +22,6 @@ import javax.swing.JMenu;
 import javax.swing.JPopupMenu;
 
 import ch.usi.inf.sape.trevis.model.ContextTreeNode;
-import ch.usi.inf.sape.trevis.model.attribute.LongAttribute;
 import ch.usi.inf.sape.trevis.swing.action.SetIntPropertyAction;
 import ch.usi.inf.sape.util.Colors;
 
@@ -50,7 +49,40 @@ public final class TreeMapRenderer extends TreeViewRenderer {
 
 
 	public static final String GAP = "GAP";
+	
+	/**
+	 * The parameters of this renderer, compiled once per Configuration change.
+	 */
+	private static final class Parameters {
+		private final RenderParameters view;
+		private final int gap;
+		
+		public Parameters(final RenderParameters view) {
+			this.view = view;
+			gap = view.getSnapshot().getInt(GAP);
+		}
+	}
+	
+	/**
+	 * The rectangles of the entries of a plan (scratch arrays for findEntry() and renderTree()).
+	 */
+	private static final class Rectangles {
+		private final int[] xs;
+		private final int[] ys;
+		private final int[] ws;
+		private final int[] hs;
+		
+		public Rectangles(final int size) {
+			xs = new int[size];
+			ys = new int[size];
+			ws = new int[size];
+			hs = new int[size];
+		}
+	}
+	
 	private int gapSize;
+	private Parameters parameters;
+	private Rectangles rectangles; // scratch arrays for findEntry() and renderTree()
 
 	
 	public TreeMapRenderer() {
@@ -67,6 +99,11 @@ public final class TreeMapRenderer extends TreeViewRenderer {
 	public void prepareConfiguration(final Configuration configuration) {
 		configuration.addPropertyIfNotPresent(new Property(GAP, "Gap", Integer.class, 3));
 	}
+	
+	@Override
+	public void declareDependencies(final DependencyRegistry registry) {
+		registry.declare(GAP, CacheTier.LAYOUT);
+	}
 		
 	/**
 	 * Convenience method delegating to TreeViewConfiguration.
@@ -83,6 +120,16 @@ public final class TreeMapRenderer extends TreeViewRenderer {
 	}
 	
 	
+	private Parameters getParameters(final RenderParameters view) {
+		Parameters p = parameters;
+		if (p==null || p.view!=view) {
+			p = new Parameters(view);
+			parameters = p;
+		}
+		return p;
+	}
+	
+	
 	//--- statistics
 	@Override
 	public void recomputeStatistics() {
@@ -101,73 +148,146 @@ public final class TreeMapRenderer extends TreeViewRenderer {
 	}
 
 	
-	//--- hit testing
+	/**
+	 * The area of an entry is proportional to its size, so the resolution is the number of pixels.
+	 */
 	@Override
-	public ContextTreeNode findNode(final int mx, final int my) {
-		if (getTop()==null) {
-			return null;
-		}
-		return findNode(getTop(), mx, my, 0, 0, getWidth(), getHeight(), (getView().getPathLengthToRoot(getTop())%2)==0);
+	public int getResolution(final Surface surface) {
+		return surface.getWidth()*surface.getHeight();
 	}
+	
 
-	private ContextTreeNode findNode(final ContextTreeNode node, final int mx, final int my, final int x, final int y, final int w, final int h, final boolean horizontal) {
-		final int gap = getGap();
-		if (w<2*gap || h<2*gap) {
-			return null;
+	//--- hit testing
+	@Override
+	public int findEntry(final RenderPlan plan, final int mx, final int my, final RenderParameters parameters) {
+		final Parameters p = getParameters(parameters);
+		final int gap = p.gap;
+		final Rectangles r = getRectangles(plan.size());
+		final boolean topHorizontal = (getView().getPathLengthToRoot(plan.getTop())%2)==0;
+		int hit = -1;
+		int entry = 0;
+		while (entry<plan.size()) {
+			layout(plan, entry, r, gap, topHorizontal, getWidth(), getHeight());
+			final int x = r.xs[entry];
+			final int y = r.ys[entry];
+			final int w = r.ws[entry];
+			final int h = r.hs[entry];
+			if (w<2*gap || h<2*gap || mx<x || mx>=x+w || my<y || my>=y+h) {
+				// the subtree is not shown, or does not contain the position
+				entry = plan.getSubtreeEnd(entry);
+				continue;
+			}
+			hit = entry;
+			entry++;
 		}
-		final LongAttribute sizeMetric = getView().getSizeAttribute();
-		final long size = sizeMetric.evaluate(node);
-		if (size==0) {
-			return null;
+		return hit;
+	}
+	
+	private Rectangles getRectangles(final int size) {
+		if (rectangles==null || rectangles.xs.length<size) {
+			rectangles = new Rectangles(size);
 		}
-		long sum = 0;
-		for (int c = 0; c<node.getChildCount(); c++) {
-			final long cc = sizeMetric.evaluate(node.getChild(c));
-			if (horizontal) {
-				final ContextTreeNode hit = findNode(node.getChild(c), mx, my, (int)(x+gap+((w-2*gap)*sum/size)), y+gap, (int)((w-2*gap)*cc/size), h-2*gap, false);
-				if (hit!=null) {
-					return hit;
-				}
+		return rectangles;
+	}
+	
+	private static boolean isHorizontal(final RenderPlan plan, final int entry, final boolean topHorizontal) {
+		return topHorizontal==(plan.getDepth(entry)%2==0);
+	}
+	
+	/**
+	 * Compute the rectangle of the given entry (slice and dice within the rectangle of its parent).
+	 */
+	private static void layout(final RenderPlan plan, final int entry, final Rectangles r, final int gap, final boolean topHorizontal, final int width, final int height) {
+		final int parent = plan.getParent(entry);
+		if (parent<0) {
+			r.xs[entry] = 0;
+			r.ys[entry] = 0;
+			r.ws[entry] = width;
+			r.hs[entry] = height;
+		} else {
+			final int x = r.xs[parent];
+			final int y = r.ys[parent];
+			final int w = r.ws[parent];
+			final int h = r.hs[parent];
+			final double start = plan.getRelativeStart(entry);
+			final double extent = plan.getRelativeExtent(entry);
+			if (isHorizontal(plan, parent, topHorizontal)) {
+				r.xs[entry] = (int)(x+gap+((w-2*gap)*start));
+				r.ys[entry] = y+gap;
+				r.ws[entry] = (int)((w-2*gap)*extent);
+				r.hs[entry] = h-2*gap;
 			} else {
-				final ContextTreeNode hit = findNode(node.getChild(c), mx, my, x+gap, (int)(y+gap+((h-2*gap)*sum/size)), w-2*gap, (int)((h-2*gap)*cc/size), true);
-				if (hit!=null) {
-					return hit;
-				}
+				r.xs[entry] = x+gap;
+				r.ys[entry] = (int)(y+gap+((h-2*gap)*start));
+				r.ws[entry] = w-2*gap;
+				r.hs[entry] = (int)((h-2*gap)*extent);
 			}
-			sum += cc;
-		}
-		if (mx>=x && mx<x+w && my>=y && my<y+h) {
-			return node;
-		} else {
-			return null;
 		}
 	}
 
 	
 	//--- rendering
+	/**
+	 * The descendants of an entry lie within its rectangle,
+	 * so only that rectangle (laid out along the path from top) changes.
+	 */
+	@Override
+	public Rectangle getRepaintBounds(final RenderPlan plan, final int entry, final Surface surface, final RenderParameters parameters) {
+		final Parameters p = getParameters(parameters);
+		final Rectangles r = getRectangles(plan.size());
+		final boolean topHorizontal = (getView().getPathLengthToRoot(plan.getTop())%2)==0;
+		final int depth = plan.getDepth(entry);
+		final int[] path = new int[depth+1];
+		int e = entry;
+		for (int d=depth; d>=0; d--) {
+			path[d] = e;
+			e = plan.getParent(e);
+		}
+		for (final int pathEntry : path) {
+			layout(plan, pathEntry, r, p.gap, topHorizontal, surface.getWidth(), surface.getHeight());
+		}
+		return new Rectangle(r.xs[entry], r.ys[entry], r.ws[entry], r.hs[entry]);
+	}
+	
 	@Override
-	public void renderTree(final Graphics2D g2, final Surface surface) {
-		renderNode(g2, surface, getTop(), 0, 0, surface.getWidth(), surface.getHeight(), (getView().getPathLengthToRoot(getTop())%2)==0);
+	public void renderTree(final Graphics2D g2, final Surface surface, final RenderPlan plan, final RenderParameters parameters) {
+		final Parameters p = getParameters(parameters);
+		final int gap = p.gap;
+		final Rectangles r = getRectangles(plan.size());
+		final boolean topHorizontal = (getView().getPathLengthToRoot(plan.getTop())%2)==0;
+		final Rectangle clip = g2.getClipBounds();
+		int entry = 0;
+		while (entry<plan.size()) {
+			layout(plan, entry, r, gap, topHorizontal, surface.getWidth(), surface.getHeight());
+			final int w = r.ws[entry];
+			final int h = r.hs[entry];
+			if (w<2*gap || h<2*gap || w<1 || h<1 || (clip!=null && !clip.intersects(r.xs[entry], r.ys[entry], w, h))) {
+				// too small, or outside the region to repaint
+				entry = plan.getSubtreeEnd(entry);
+				continue;
+			}
+			renderNode(p, g2, plan, entry, r.xs[entry], r.ys[entry], w, h, isHorizontal(plan, entry, topHorizontal));
+			entry++;
+		}
 	}
 
-	private void renderNode(final Graphics2D g2, final Surface surface, final ContextTreeNode node, final int x, final int y, final int w, final int h, final boolean horizontal) {
-		 final int gap = getGap();
-		 if (w<2*gap || h<2*gap || w<1 || h<1) {
-			 return;
-		 }
-		 final LongAttribute sizeMetric = getView().getSizeAttribute();
-		 final long size = sizeMetric.evaluate(node);
+	private void renderNode(final Parameters p, final Graphics2D g2, final RenderPlan plan, final int entry, final int x, final int y, final int w, final int h, final boolean horizontal) {
+		 final int gap = p.gap;
+		 final ContextTreeNode node = plan.getNode(entry);
+		 final long size = plan.getSize(entry);
 		 
-		 if (size < getView().getCutoff()*sizeMetric.evaluate(getRoot())/1000) {
-			 // cut-off at cutoff 1000ths of root's angle
+		 if (plan.isAggregate(entry) || isPlaceholder(node)) {
+			 g2.setColor(getPlaceholderColor(node));
+			 g2.fillRect(x, y, w, h);
+			 renderLabel(g2, getLabel(plan, entry, p.view), x, y, w, h);
 			 return;
 		 }
 
 		 // background
-		 final boolean focusSame = getView().getFocusSame();
+		 final boolean focusSame = p.view.getFocusSame();
 		 final ContextTreeNode current = getCurrent();
 		 final boolean focused = node==current || (focusSame && (current!=null && node!=null && node.getLabel()!=null && node.getLabel().equals(current.getLabel())));
-		 final int hsb = getHsb(node, focused);
+		 final int hsb = getHsb(node, focused, p.view);
 		 g2.setColor(new Color(Colors.hsbToRgb(hsb)));
 		 g2.fillRect(x, y, w, h);
 
@@ -175,21 +295,18 @@ public final class TreeMapRenderer extends TreeViewRenderer {
 			 return;
 		 }
 
-		 long sum = 0;
-		 for (int c = 0; c<node.getChildCount(); c++) {
-			 sum += sizeMetric.evaluate(node.getChild(c));
-		 }
+		 final long sum = plan.getChildrenSize(entry);
 
 		 // hatch for too-small children
 		 final BufferedImage bi = new BufferedImage(2, 2, BufferedImage.TYPE_INT_RGB);
 		 final Graphics2D big = bi.createGraphics();
-		 big.setColor(focused?Color.BLACK:new Color(Colors.hsbToRgb(getHsb(node, true))));
+		 big.setColor(focused?Color.BLACK:new Color(Colors.hsbToRgb(getHsb(node, true, p.view))));
 		 if (horizontal) {
 			 big.fillRect(0, 0, 1, 2);
 		 } else {
 			 big.fillRect(0, 0, 2, 1);			
 		 }
-		 big.setColor(new Color(Colors.hsbToRgb(getHsb(node, focused))));
+		 big.setColor(new Color(Colors.hsbToRgb(hsb)));
 		 if (horizontal) {
 			 big.fillRect(1, 0, 1, 2);
 		 } else {
@@ -216,31 +333,29 @@ public final class TreeMapRenderer extends TreeViewRenderer {
 			 g2.setColor(Color.BLACK);
 			 g2.drawRect(x, y, w-1, h-1);
 		 }
+		 
+		 // corner mark if the children are beyond the depth horizon
+		 if (plan.isTruncated(entry)) {
+			 final int m = Math.min(Math.min(w, h), 2*TRUNCATION_MARK_SIZE);
+			 g2.setColor(TRUNCATION_COLOR);
+			 g2.fillRect(x+w-m, y+h-m, m, m);
+		 }
 
 		 // name
+		 renderLabel(g2, getLabel(plan, entry, p.view), x, y, w, h);
+	 }
+	
+	private void renderLabel(final Graphics2D g2, final String label, final int x, final int y, final int w, final int h) {
 		 g2.setColor(Color.WHITE);
 		 final int cx = x+w/2;
 		 final int cy = y+h/2;
-		 final String label = ""+getView().getLabelAttribute().getValue(node); 
 		 final FontMetrics fm = g2.getFontMetrics();
 		 final float labelWidth = (float)fm.getStringBounds(label, g2).getWidth();
 		 final int labelOffset = fm.getHeight()/2-fm.getDescent();
 		 final Shape clip = g2.getClip();
-		 g2.setClip(x, y, w, h);
+		 g2.clipRect(x, y, w, h);
 		 g2.drawString(label, cx-labelWidth/2, cy+labelOffset);
 		 g2.setClip(clip);
-
-		 // children
-		 sum = 0;
-		 for (int c = 0; c<node.getChildCount(); c++) {
-			 final long cc = sizeMetric.evaluate(node.getChild(c));
-			 if (horizontal) {
-				 renderNode(g2, surface, node.getChild(c), (int)(x+gap+((w-2*gap)*sum/size)), y+gap, (int)((w-2*gap)*cc/size), h-2*gap, false);
-			 } else {
-				 renderNode(g2, surface, node.getChild(c), x+gap, (int)(y+gap+((h-2*gap)*sum/size)), w-2*gap, (int)((h-2*gap)*cc/size), true);
-			 }
-			 sum += cc;
-		 }
-	 }
+	}
 
 }
@@ -16,20 +16,34 @@ import java.awt.Font;
 import java.awt.FontMetrics;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
+import java.awt.Rectangle;
 import java.awt.RenderingHints;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.awt.event.ComponentAdapter;
+import java.awt.event.ComponentEvent;
 import java.awt.event.KeyAdapter;
 import java.awt.event.KeyEvent;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseMotionAdapter;
 import java.awt.print.PageFormat;
+import java.awt.image.BufferedImage;
 import java.awt.print.Printable;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import javax.swing.JComponent;
 import javax.swing.JMenu;
 import javax.swing.JPopupMenu;
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
 import javax.swing.ToolTipManager;
 
 import ch.usi.inf.sape.trevis.model.ContextTree;
@@ -47,11 +61,15 @@ import ch.usi.inf.sape.trevis.swing.action.PrintAction;
 import ch.usi.inf.sape.trevis.swing.action.SetBooleanAttributePropertyAction;
 import ch.usi.inf.sape.trevis.swing.action.SetBooleanPropertyAction;
 import ch.usi.inf.sape.trevis.swing.action.SetCutoffAction;
+import ch.usi.inf.sape.trevis.swing.action.SetIntPropertyAction;
 import ch.usi.inf.sape.trevis.swing.action.SetLongAttributePropertyAction;
 import ch.usi.inf.sape.trevis.swing.action.SetStringAttributePropertyAction;
 import ch.usi.inf.sape.trevis.swing.action.ShowAsAction;
 import ch.usi.inf.sape.trevis.swing.action.ToggleBooleanPropertyAction;
 import ch.usi.inf.sape.trevis.swing.action.ZoomToAction;
+import ch.usi.inf.sape.trevis.swing.source.TreeSource;
+import ch.usi.inf.sape.trevis.swing.source.TreeSourceListener;
+import ch.usi.inf.sape.trevis.swing.source.TreeVersion;
 import ch.usi.inf.sape.util.Colors;
 
 
@@ -63,9 +81,19 @@ import ch.usi.inf.sape.util.Colors;
 public final class TreeView extends JComponent implements Printable {
 
 	private static final Dimension PREFERRED_SIZE = new Dimension(300, 300);
+	private static final int RESIZE_SETTLE_DELAY = 200; // milliseconds
+	private static final int TOOLTIP_CACHE_SIZE = 64; // number of nodes
+	private static final int CHAIN_TOOLTIP_LINES = 30; // number of frames listed in the tooltip of a compressed chain
+	private static final int MAX_DETAIL_LEVEL = 30; // finest level of detail (2^30 units)
+	private static final int MAX_PARTIAL_REPAINT_FRACTION = 8; // repaint everything if more than 1/8 of the plan changed
 
 	public static final String FOCUS_SAME = "FOCUS_SAME";
 	public static final String CUTOFF = "CUTOFF";
+	public static final String MAX_NODES = "MAX_NODES";
+	public static final String AGGREGATE_CUT_OFF = "AGGREGATE_CUT_OFF";
+	public static final String COMPRESS_CHAINS = "COMPRESS_CHAINS";
+	public static final String DEPTH_HORIZON = "DEPTH_HORIZON";
+	public static final String LEVEL_OF_DETAIL = "LEVEL_OF_DETAIL";
 	public static final String SIZE_ATTRIBUTE = "SIZE_ATTRIBUTE";
 	public static final String AVAILABLE_SIZE_ATTRIBUTES = "AVALIABLE_SIZE_ATTRIBUTES";
 	public static final String SATURATION_ATTRIBUTE = "SATURATION_ATTRIBUTE";
@@ -81,25 +109,69 @@ public final class TreeView extends JComponent implements Printable {
 	public static final String SHOW_INFO_OVERLAY = "SHOW_INFO_OVERLAY";
 	public static final String SHOW_PROPERTIES_OVERLAY = "SHOW_PROPERTIES_OVERLAY";
 	
+	/**
+	 * The name of the bean property fired (see addPropertyChangeListener()) when the Configuration gets replaced.
+	 */
+	public static final String CONFIGURATION_PROPERTY = "configuration";
+	
 	
 	private Configuration configuration;
 	private ConfigurationListener configurationListener;
 	private long maxSaturation;
-	private ContextTree tree;
-	private ContextTreeNode root;
-	private ContextTreeNode top;
-	private ContextTreeNode current;
-	private TreeViewRenderer renderer;
+	private final AttributeStatistics statistics;
+	private boolean prewarming;
+	// volatile, because asynchronous listeners read them
+	private volatile ContextTree tree;
+	private volatile ContextTreeNode root;
+	private volatile ContextTreeNode top;
+	private volatile ContextTreeNode current;
+	private volatile TreeViewRenderer renderer;
 	private final TreeViewRenderer[] availableRenderers;
+	private RenderParameters renderParameters; // compiled from the last ConfigurationSnapshot
+	private final DependencyRegistry dependencies;
+	private RenderPlan renderPlan; // built for the last view state, null if invalid
+	private RenderPlan[] detailPlans; // plans per level of detail for the last view state, built when first needed
+	private volatile ChainIndex chainIndex; // for root, built when first needed
+	private TreeSource source; // null if the tree was set directly
+	private TreeVersion sourceVersion; // the version of the source shown, null if the source does not publish versions
+	private LongAttribute sourceSizeAttribute; // the size attribute set for the source, null if none
+	private LongAttribute sizeAttributeBeforeSource; // to restore when the source gets removed
+	private boolean sourceSizeOverridden; // whether the source size attribute overrides the one of the parent configuration
+	private final ArrayList<ContextTreeNode> loadedNodes; // nodes whose children the source loaded since the last frame
+	private final TreeSourceListener sourceListener;
 
 	private boolean mouseInside;
 	private int mouseX;
 	private int mouseY;
 
-	private final ArrayList<TreeViewListener> listeners;
+	private final ListenerList<TreeViewListener> listeners;
+	private final FrameScheduler frameScheduler;
 
 	private PageFormat pageFormat; // for printing
 	
+	private JPopupMenu popup; // created lazily, null if it needs to be rebuilt
+	private ZoomToAction zoomInAction;
+	private ZoomToAction zoomOutAction;
+	private ZoomToAction zoomAllAction;
+	private ZoomToAction zoomToTopSplitAction;
+	
+	private BufferedImage frameBuffer; // the last rendered frame, null if there is none
+	private BufferedImage resizePreview; // last frame, shown scaled while resizing
+	private final Timer resizeTimer;
+	
+	// result of the last hit test, valid as long as nothing affecting the layout changed
+	private int hitX;
+	private int hitY;
+	private int hitEntry;
+	private RenderParameters hitParameters; // null if the hit result is invalid
+	private TreeViewRenderer hitRenderer;
+	private RenderPlan hitPlan;
+	private int hitWidth;
+	private int hitHeight;
+	// most recently used tooltips, valid for tooltipAttribute
+	private final LinkedHashMap<ContextTreeNode, String> tooltips;
+	private StringAttribute tooltipAttribute;
+	
 
 	public TreeView() {
 		this(true);
@@ -129,37 +201,87 @@ public final class TreeView extends JComponent implements Printable {
 		configuration.dump();
 		pageFormat = null;
 		setBackground(Color.WHITE);
-		listeners = new ArrayList<TreeViewListener>();
+		listeners = new ListenerList<TreeViewListener>();
+		frameScheduler = new FrameScheduler(this);
+		statistics = new AttributeStatistics();
+		tooltips = new LinkedHashMap<ContextTreeNode, String>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(final Map.Entry<ContextTreeNode, String> eldest) {
+				return size()>TOOLTIP_CACHE_SIZE;
+			}
+		};
+		dependencies = new DependencyRegistry();
+		declareDependencies(dependencies);
+		for (final TreeViewRenderer renderer : availableRenderers) {
+			renderer.declareDependencies(dependencies);
+		}
+
+		loadedNodes = new ArrayList<ContextTreeNode>();
+		sourceListener = new TreeSourceListener() {
+			public void childrenLoaded(final TreeSource source, final ContextTreeNode node) {
+				// called on the event dispatch thread: the next frame handles all loads at once
+				loadedNodes.add(node);
+				requestFrame();
+			}
+			public void loadFailed(final TreeSource source, final ContextTreeNode node, final Exception exception) {
+				// the placeholder now shows the failure (in its label, tooltip, and color)
+				invalidateHitCache();
+				requestFrame();
+			}
+			public void versionPublished(final TreeSource source) {
+				// called on the publisher's thread: the next frame picks up the version
+				requestFrame();
+			}
+		};
 
 		configurationListener = new ConfigurationListener() {
 			public void treeViewConfigurationChanged(final Property property) {
-				repaint();
+				if (property.isVector()) {
+					// the menus list the elements of vector properties (e.g., the available attributes)
+					popup = null;
+				}
+				final EnumSet<CacheTier> tiers = dependencies.getTiers(property.getKey());
+				if (!tiers.isEmpty()) {
+					invalidateCaches(tiers, property);
+					requestFrame();
+				}
 			}
 		};
 
 		configuration.addConfigurationListener(configurationListener);
 
+		resizeTimer = new Timer(RESIZE_SETTLE_DELAY, new ActionListener() {
+			public void actionPerformed(final ActionEvent ev) {
+				resizeSettled();
+			}
+		});
+		resizeTimer.setRepeats(false);
+		addComponentListener(new ComponentAdapter() {
+			@Override
+			public void componentResized(final ComponentEvent ev) {
+				resizeStarted();
+			}
+		});
+
 		if (interactive) {
 			addMouseMotionListener(new MouseMotionAdapter() {
 				@Override
 				public void mouseMoved(final MouseEvent ev) {
 					mouseX = ev.getX();
 					mouseY = ev.getY();
-					current = findNode(mouseX, mouseY);
-					repaint();
-					fireCurrentNodeChanged();
+					frameScheduler.requestHoverUpdate();
 				}
 			});
 			addMouseListener(new MouseAdapter() {
 				@Override
 				public void mouseEntered(final MouseEvent ev) {
 					mouseInside = true;
-					repaint();
+					requestFrame();
 				}
 				@Override
 				public void mouseExited(final MouseEvent ev) {
 					mouseInside = false;
-					repaint();
+					requestFrame();
 				}
 				@Override
 				public void mousePressed(final MouseEvent ev) {
@@ -177,7 +299,7 @@ public final class TreeView extends JComponent implements Printable {
 						final ContextTreeNode node = findNode(ev.getX(), ev.getY());
 						if (node!=null) {
 							top = node;
-							repaint();
+							requestFrame();
 							fireTopNodeChanged();
 						}
 					}
@@ -201,6 +323,11 @@ public final class TreeView extends JComponent implements Printable {
 	public void prepareConfiguration(final Configuration configuration) {
 		configuration.addPropertyIfNotPresent(new Property(FOCUS_SAME, "Focus", Boolean.class, false));
 		configuration.addPropertyIfNotPresent(new Property(CUTOFF, "Cutoff", Integer.class, 1));
+		configuration.addPropertyIfNotPresent(new Property(MAX_NODES, "Max nodes", Integer.class, 0));
+		configuration.addPropertyIfNotPresent(new Property(AGGREGATE_CUT_OFF, "Aggregate cut-off nodes", Boolean.class, false));
+		configuration.addPropertyIfNotPresent(new Property(COMPRESS_CHAINS, "Compress chains", Boolean.class, false));
+		configuration.addPropertyIfNotPresent(new Property(DEPTH_HORIZON, "Depth horizon", Integer.class, 0));
+		configuration.addPropertyIfNotPresent(new Property(LEVEL_OF_DETAIL, "Level of detail", Boolean.class, false));
 		final LongAttribute defaultSizeAttribute = new LeafCountAttribute();
 		configuration.addPropertyIfNotPresent(new Property(SIZE_ATTRIBUTE, "Size", LongAttribute.class, defaultSizeAttribute));
 		configuration.addPropertyIfNotPresent(new Property(AVAILABLE_SIZE_ATTRIBUTES, "Available sizes", LongAttribute[].class, new LongAttribute[] {defaultSizeAttribute}));
@@ -219,12 +346,50 @@ public final class TreeView extends JComponent implements Printable {
 		configuration.addPropertyIfNotPresent(new Property(SHOW_TOOLTIPS, "Show tooltip", Boolean.class, true));
 		configuration.addPropertyIfNotPresent(new Property(SHOW_INFO_OVERLAY, "Show info", Boolean.class, true));
 		configuration.addPropertyIfNotPresent(new Property(SHOW_PROPERTIES_OVERLAY, "Show properties", Boolean.class, true));
-		
-		configuration.lookup(SATURATION_ATTRIBUTE).addPropertyListener(new PropertyListener() {
-			public void propertyChanged(Property property) {
-				recomputeMaxSaturation();
-			}
-		});
+	}
+	
+	/**
+	 * Declare which CacheTiers depend on which of the properties added in prepareConfiguration().
+	 */
+	protected void declareDependencies(final DependencyRegistry registry) {
+		registry.declare(FOCUS_SAME, CacheTier.COLOR);
+		registry.declare(CUTOFF, CacheTier.LAYOUT);
+		registry.declare(MAX_NODES, CacheTier.LAYOUT);
+		registry.declare(AGGREGATE_CUT_OFF, CacheTier.LAYOUT);
+		registry.declare(COMPRESS_CHAINS, CacheTier.LAYOUT);
+		registry.declare(DEPTH_HORIZON, CacheTier.LAYOUT);
+		registry.declare(LEVEL_OF_DETAIL, CacheTier.LAYOUT);
+		registry.declare(SIZE_ATTRIBUTE, CacheTier.LAYOUT, CacheTier.OVERLAY);
+		registry.declare(SATURATION_ATTRIBUTE, CacheTier.COLOR, CacheTier.STATISTICS, CacheTier.OVERLAY);
+		registry.declare(HIGHLIGHT_ATTRIBUTE, CacheTier.COLOR);
+		registry.declare(HUE_ATTRIBUTE, CacheTier.COLOR, CacheTier.OVERLAY);
+		registry.declare(LABEL_ATTRIBUTE, CacheTier.LABEL);
+		registry.declare(INFO_LINES, CacheTier.OVERLAY);
+		registry.declare(SHOW_INFO_OVERLAY, CacheTier.OVERLAY);
+		registry.declare(SHOW_PROPERTIES_OVERLAY, CacheTier.OVERLAY);
+		// only read when needed, nothing to invalidate
+		registry.declare(TOOLTIP);
+		registry.declare(SHOW_TOOLTIPS);
+		// only shown in the popup menu (which is rebuilt whenever a vector property changes)
+		registry.declare(AVAILABLE_SIZE_ATTRIBUTES);
+		registry.declare(AVAILABLE_SATURATION_ATTRIBUTES);
+		registry.declare(AVAILABLE_HIGHLIGHT_ATTRIBUTES);
+		registry.declare(AVAILABLE_HUE_ATTRIBUTES);
+	}
+	
+	public final DependencyRegistry getDependencyRegistry() {
+		return dependencies;
+	}
+	
+	/**
+	 * Invalidate the given tiers of the caches of this TreeView and its current renderer,
+	 * because the given Property changed.
+	 */
+	private void invalidateCaches(final Set<CacheTier> tiers, final Property property) {
+		if (tiers.contains(CacheTier.STATISTICS) && SATURATION_ATTRIBUTE.equals(property.getKey())) {
+			recomputeMaxSaturation();
+		}
+		renderer.invalidateCaches(tiers, property);
 	}
 	
 	public final int getMouseX() {
@@ -261,24 +426,45 @@ public final class TreeView extends JComponent implements Printable {
 	
 	public void setRenderer(final TreeViewRenderer renderer) {
 		this.renderer = renderer;
+		popup = null;
 		renderer.recomputeStatistics();
 		fireRendererChanged();
-		repaint();
+		requestFrame();
 	}
 
 	public Configuration getConfiguration() {
 		return configuration;
 	}
+	
+	/**
+	 * Get the typed parameters for rendering a frame.
+	 * They are recompiled only if the Configuration changed since the last call.
+	 */
+	public RenderParameters getRenderParameters() {
+		final ConfigurationSnapshot snapshot = configuration.getSnapshot();
+		if (renderParameters==null || renderParameters.getSnapshot()!=snapshot) {
+			renderParameters = new RenderParameters(snapshot);
+		}
+		return renderParameters;
+	}
 
+	/**
+	 * Replace the Configuration.
+	 * Fires a PropertyChangeEvent for CONFIGURATION_PROPERTY, 
+	 * so components listening to the Configuration of this view can follow.
+	 */
 	public void setConfiguration(final Configuration configuration) {
-		if (this.configuration!=null) {
-			this.configuration.removeConfigurationListener(configurationListener);
+		final Configuration oldConfiguration = this.configuration;
+		if (oldConfiguration!=null) {
+			oldConfiguration.removeConfigurationListener(configurationListener);
 		}
 		this.configuration = configuration;
+		popup = null;
 		if (this.configuration!=null) {
 			this.configuration.addConfigurationListener(configurationListener);
 		}
-		repaint();
+		requestFrame();
+		firePropertyChange(CONFIGURATION_PROPERTY, oldConfiguration, configuration);
 	}
 
 	
@@ -553,18 +739,72 @@ public final class TreeView extends JComponent implements Printable {
 		configuration.lookup(CUTOFF).setInt(cutoff);
 	}
 	
+	/**
+	 * Convenience method delegating to TreeViewConfiguration.
+	 */
+	public int getMaxNodes() {
+		return configuration.lookup(MAX_NODES).getInt();
+	}
+	
+	/**
+	 * Convenience method delegating to TreeViewConfiguration.
+	 * Show at most the given number of nodes (the largest ones), in addition to the cutoff.
+	 * 0 means no limit.
+	 */
+	public void setMaxNodes(final int maxNodes) {
+		configuration.lookup(MAX_NODES).setInt(maxNodes);
+	}
+	
+	/**
+	 * Convenience method delegating to TreeViewConfiguration.
+	 */
+	public int getDepthHorizon() {
+		return configuration.lookup(DEPTH_HORIZON).getInt();
+	}
+	
+	/**
+	 * Convenience method delegating to TreeViewConfiguration.
+	 * Show at most the given number of levels, starting at the top node
+	 * (the horizon moves along when zooming).
+	 * 0 means no limit.
+	 */
+	public void setDepthHorizon(final int depthHorizon) {
+		configuration.lookup(DEPTH_HORIZON).setInt(depthHorizon);
+	}
+	
 
 	//---
 	private void showPopup(final int x, final int y) {
-		final JPopupMenu popup = new JPopupMenu();
+		if (popup==null) {
+			popup = createPopup();
+		}
 		//final ContextTreeNode node = findNode(x, y);
-		final ContextTreeNode parentOfTop = findParent(null, root, top);
+		final ContextTreeNode parentOfTop = root==null?null:findParent(null, root, top);
 		final ContextTreeNode topSplit = findSplit(root);
 		final StringAttribute nodeNameAttribute = getLabelAttribute();
-		popup.add(new ZoomToAction("Zoom in", nodeNameAttribute, current, this));
-		popup.add(new ZoomToAction("Zoom out", nodeNameAttribute, parentOfTop, this));
-		popup.add(new ZoomToAction("Zoom all", nodeNameAttribute, root, this));
-		popup.add(new ZoomToAction("Zoom to top split", nodeNameAttribute, topSplit, this));
+		zoomInAction.setNode(nodeNameAttribute, current);
+		zoomOutAction.setNode(nodeNameAttribute, parentOfTop);
+		zoomAllAction.setNode(nodeNameAttribute, root);
+		zoomToTopSplitAction.setNode(nodeNameAttribute, topSplit);
+		popup.show(this, x, y);
+	}
+	
+	/**
+	 * The popup menu is cached and only rebuilt when the set of menu items may have changed
+	 * (vector Property changed, renderer or Configuration replaced).
+	 * The actions keep themselves up to date by listening to their Properties.
+	 */
+	private JPopupMenu createPopup() {
+		final JPopupMenu popup = new JPopupMenu();
+		final StringAttribute nodeNameAttribute = getLabelAttribute();
+		zoomInAction = new ZoomToAction("Zoom in", nodeNameAttribute, null, this);
+		zoomOutAction = new ZoomToAction("Zoom out", nodeNameAttribute, null, this);
+		zoomAllAction = new ZoomToAction("Zoom all", nodeNameAttribute, null, this);
+		zoomToTopSplitAction = new ZoomToAction("Zoom to top split", nodeNameAttribute, null, this);
+		popup.add(zoomInAction);
+		popup.add(zoomOutAction);
+		popup.add(zoomAllAction);
+		popup.add(zoomToTopSplitAction);
 		
 		final JMenu cutoffMenu = new JMenu("Cutoff");
 		cutoffMenu.add(new SetCutoffAction(0, this));
@@ -572,6 +812,22 @@ public final class TreeView extends JComponent implements Printable {
 		cutoffMenu.add(new SetCutoffAction(10, this));
 		cutoffMenu.add(new SetCutoffAction(100, this));
 		popup.add(cutoffMenu);
+		
+		final JMenu maxNodesMenu = new JMenu("Node Budget");
+		maxNodesMenu.add(new SetIntPropertyAction(configuration.lookup(MAX_NODES), 0, "Unlimited", "Do not limit the number of nodes shown"));
+		for (final int maxNodes : new int[] {500, 2000, 10000, 50000}) {
+			maxNodesMenu.add(new SetIntPropertyAction(configuration.lookup(MAX_NODES), maxNodes, maxNodes+" nodes", "Show at most the "+maxNodes+" largest nodes"));
+		}
+		popup.add(maxNodesMenu);
+		popup.add(new ToggleBooleanPropertyAction(configuration.lookup(AGGREGATE_CUT_OFF), "Aggregate Cut-off Nodes", "Hide Cut-off Nodes", "Show the cut-off children of a node as one aggregate block, or hide them"));
+		final JMenu depthHorizonMenu = new JMenu("Depth Horizon");
+		depthHorizonMenu.add(new SetIntPropertyAction(configuration.lookup(DEPTH_HORIZON), 0, "Unlimited", "Show all levels below the top node"));
+		for (final int depthHorizon : new int[] {5, 10, 20, 50}) {
+			depthHorizonMenu.add(new SetIntPropertyAction(configuration.lookup(DEPTH_HORIZON), depthHorizon, depthHorizon+" levels", "Show at most "+depthHorizon+" levels, starting at the top node"));
+		}
+		popup.add(depthHorizonMenu);
+		popup.add(new ToggleBooleanPropertyAction(configuration.lookup(LEVEL_OF_DETAIL), "Summarize Sub-pixel Nodes", "Show All Nodes", "Show the nodes too small to be distinguished on screen as aggregate blocks, or show all nodes"));
+		popup.add(new ToggleBooleanPropertyAction(configuration.lookup(COMPRESS_CHAINS), "Compress Chains", "Expand Chains", "Show each chain of single-child nodes as one element, or show each of its nodes"));
 
 		popup.addSeparator();
 		
@@ -630,37 +886,178 @@ public final class TreeView extends JComponent implements Printable {
 		}
 		*/
 		popup.add(exportMenu);
-		popup.show(this, x, y);
+		return popup;
 	}
 
 	
-	private ContextTreeNode findNode(int x, int y) {
-		return renderer.findNode(x, y);
+	/**
+	 * Find the node at the given position.
+	 * The result of the last call is cached,
+	 * so the tooltip for the position the hover just resolved costs no extra traversal.
+	 */
+	private ContextTreeNode findNode(final int x, final int y) {
+		final int entry = findEntry(x, y);
+		return entry<0?null:hitPlan.getNode(entry);
+	}
+	
+	/**
+	 * Find the entry of the current RenderPlan at the given position (-1 if none).
+	 */
+	private int findEntry(final int x, final int y) {
+		final RenderParameters parameters = getRenderParameters();
+		final RenderPlan plan = getRenderPlan();
+		if (plan==null) {
+			return -1;
+		}
+		if (hitParameters!=parameters || hitPlan!=plan || hitX!=x || hitY!=y || hitRenderer!=renderer || hitWidth!=getWidth() || hitHeight!=getHeight()) {
+			hitEntry = renderer.findEntry(plan, x, y, parameters);
+			hitParameters = parameters;
+			hitPlan = plan;
+			hitX = x;
+			hitY = y;
+			hitRenderer = renderer;
+			hitWidth = getWidth();
+			hitHeight = getHeight();
+		}
+		return hitEntry;
+	}
+	
+	/**
+	 * Forget the cached plan, hit result, and tooltips (e.g., because the tree changed).
+	 */
+	private void invalidateHitCache() {
+		renderPlan = null;
+		detailPlans = null;
+		hitParameters = null;
+		hitPlan = null;
+		tooltips.clear();
+	}
+	
+	/**
+	 * Get the RenderPlan for the current view state, for rendering onto this component 
+	 * (null if there is nothing to show).
+	 */
+	public final RenderPlan getRenderPlan() {
+		return getRenderPlan(new Surface(getWidth(), getHeight()));
+	}
+	
+	/**
+	 * Get the RenderPlan for the current view state, for rendering onto the given surface 
+	 * (null if there is nothing to show).
+	 * The plan gets rebuilt only if the root, top, or one of the parameters it depends on changed.
+	 * 
+	 * With level of detail enabled, the plan only resolves nodes down to the resolution of the current renderer 
+	 * on the given surface (rounded up to the next power of two).
+	 * The plans for the different levels form a pyramid, where each level gets built when first needed
+	 * (e.g., when the view grows), and the whole pyramid gets dropped when the view state changes.
+	 */
+	public final RenderPlan getRenderPlan(final Surface surface) {
+		final ContextTreeNode top = this.top;
+		if (top==null) {
+			return null;
+		}
+		final RenderParameters parameters = getRenderParameters();
+		if (parameters.getLevelOfDetail()) {
+			return getDetailPlan(top, getDetailLevel(surface), parameters);
+		}
+		RenderPlan plan = renderPlan;
+		if (plan==null || !plan.isFor(root, top, parameters)) {
+			plan = new RenderPlan(root, top, parameters, parameters.getCompressChains()?getChainIndex():null);
+			renderPlan = plan;
+			prepareSource(plan);
+		}
+		return plan;
+	}
+	
+	/**
+	 * Get the level of detail matching the resolution of the current renderer on the given surface:
+	 * the smallest level L with 2^L >= resolution.
+	 */
+	private int getDetailLevel(final Surface surface) {
+		final int resolution = Math.max(2, renderer.getResolution(surface));
+		return Math.min(MAX_DETAIL_LEVEL, 32-Integer.numberOfLeadingZeros(resolution-1));
+	}
+	
+	private RenderPlan getDetailPlan(final ContextTreeNode top, final int level, final RenderParameters parameters) {
+		RenderPlan[] pyramid = detailPlans;
+		if (pyramid==null || !isFor(pyramid, top, parameters)) {
+			pyramid = new RenderPlan[MAX_DETAIL_LEVEL+1];
+			detailPlans = pyramid;
+		}
+		RenderPlan plan = pyramid[level];
+		if (plan==null) {
+			plan = new RenderPlan(root, top, parameters, parameters.getCompressChains()?getChainIndex():null, level);
+			pyramid[level] = plan;
+			prepareSource(plan);
+		}
+		return plan;
+	}
+	
+	/**
+	 * Let the source load the parts of the tree the given plan needs.
+	 */
+	private void prepareSource(final RenderPlan plan) {
+		final TreeSource source = this.source;
+		if (source!=null) {
+			source.prepare(plan);
+		}
+	}
+	
+	private boolean isFor(final RenderPlan[] pyramid, final ContextTreeNode top, final RenderParameters parameters) {
+		for (final RenderPlan plan : pyramid) {
+			if (plan!=null) {
+				return plan.isFor(root, top, parameters);
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * Get the index of the single-child chains of the tree (null if there is no tree).
+	 * The index gets built when first needed, and is kept until the root changes.
+	 */
+	public final ChainIndex getChainIndex() {
+		final ContextTreeNode root = this.root;
+		if (root==null) {
+			return null;
+		}
+		ChainIndex index = chainIndex;
+		if (index==null || index.getRoot()!=root) {
+			index = new ChainIndex(root);
+			chainIndex = index;
+		}
+		return index;
 	}
 
+	/**
+	 * Find the parent of child in the subtree rooted at node (whose parent is parent).
+	 * Returns null if child is not part of that subtree.
+	 */
 	protected final ContextTreeNode findParent(final ContextTreeNode parent, final ContextTreeNode node, final ContextTreeNode child) {
 		if (node==child) {
 			return parent;
-		} else {
-			for (int i=0; i<node.getChildCount(); i++) {
-				final ContextTreeNode n = findParent(node, node.getChild(i), child);
-				if (n!=null) {
-					return n;
-				}
+		}
+		final TraversalStack stack = new TraversalStack();
+		stack.push(node);
+		while (!stack.isEmpty()) {
+			final ContextTreeNode n = stack.nextChild();
+			if (n==null) {
+				stack.pop();
+			} else if (n==child) {
+				return stack.peek();
+			} else {
+				stack.push(n);
 			}
 		}
 		return null;
 	}
 
 	private ContextTreeNode findSplit(final ContextTreeNode node) {
-		if (node==null) {
-			return null;
-		}
-		if (node.getChildCount()==1) {
-			return findSplit(node.getChild(0));
-		} else {
-			return node;
+		ContextTreeNode split = node;
+		while (split!=null && split.getChildCount()==1) {
+			split = split.getChild(0);
 		}
+		return split;
 	}
 
 
@@ -681,19 +1078,318 @@ public final class TreeView extends JComponent implements Printable {
 		setRoot(null, subtreeRoot);
 	}
 
+	/**
+	 * Show the tree provided by the given TreeSource (which may load it lazily).
+	 * The tree gets rendered with what has been loaded so far, 
+	 * and the source gets asked to load what the view needs.
+	 */
+	public void setSource(final TreeSource source) {
+		final TreeVersion version = source==null?null:source.getLatestVersion();
+		setRoot(source==null?null:source.getTree(), version!=null?version.getRoot():source==null?null:source.getRoot());
+		this.source = source;
+		sourceVersion = version;
+		if (source!=null) {
+			source.addTreeSourceListener(sourceListener);
+			addSourceAttributes(source.getAttributes());
+		}
+	}
+	
+	/**
+	 * Make the attributes of a source available as size and saturation attributes,
+	 * and size the nodes by the first one (until the source gets removed, see restoreSizeAttribute()).
+	 * With a delegating configuration, the size attribute gets overridden only in this view's configuration,
+	 * so views sharing the parent configuration keep their size attribute.
+	 */
+	private void addSourceAttributes(final List<LongAttribute> attributes) {
+		for (final LongAttribute attribute : attributes) {
+			if (!getAvailableSizeAttributes().contains(attribute)) {
+				addAvailableSizeAttribute(attribute);
+			}
+			if (!getAvailableSaturationAttributes().contains(attribute)) {
+				addAvailableSaturationAttribute(attribute);
+			}
+		}
+		if (!attributes.isEmpty()) {
+			sourceSizeAttribute = attributes.get(0);
+			if (configuration.getParent()!=null && !configuration.overridesProperty(SIZE_ATTRIBUTE)) {
+				sourceSizeOverridden = true;
+				configuration.addOrReplaceProperty(new Property(SIZE_ATTRIBUTE, "Size", LongAttribute.class, sourceSizeAttribute));
+			} else {
+				sizeAttributeBeforeSource = getSizeAttribute();
+				setSizeAttribute(sourceSizeAttribute);
+			}
+		}
+	}
+	
+	/**
+	 * Undo the size attribute set by addSourceAttributes()
+	 * (source attributes evaluate to 0 on the nodes of other trees),
+	 * unless the user chose a different one in the meantime.
+	 */
+	private void restoreSizeAttribute() {
+		if (sourceSizeAttribute==null) {
+			return;
+		}
+		if (sourceSizeOverridden) {
+			if (configuration.overridesProperty(SIZE_ATTRIBUTE) && sourceSizeAttribute.equals(getSizeAttribute())) {
+				configuration.removeProperty(SIZE_ATTRIBUTE);
+			}
+		} else if (sourceSizeAttribute.equals(getSizeAttribute())) {
+			setSizeAttribute(sizeAttributeBeforeSource);
+		}
+		sourceSizeAttribute = null;
+		sizeAttributeBeforeSource = null;
+		sourceSizeOverridden = false;
+	}
+	
+	public final TreeSource getSource() {
+		return source;
+	}
+	
+	/**
+	 * Is the given node a placeholder for children the source has not loaded yet?
+	 */
+	public final boolean isPlaceholder(final ContextTreeNode node) {
+		final TreeSource source = this.source;
+		return source!=null && source.isPlaceholder(node);
+	}
+	
+	/**
+	 * Is the given node a placeholder for children the source failed to load?
+	 */
+	public final boolean isLoadFailed(final ContextTreeNode node) {
+		final TreeSource source = this.source;
+		return source!=null && source.isLoadFailed(node);
+	}
+	
+	/**
+	 * Called (once per frame) when the source loaded the children of the given nodes.
+	 * Only the new children and their ancestors get evaluated to update the maxima.
+	 * (Evictions do not lower the maxima, until the root changes.)
+	 */
+	private void treeLoaded(final List<ContextTreeNode> nodes) {
+		final HashSet<ContextTreeNode> affected = new HashSet<ContextTreeNode>();
+		for (final ContextTreeNode node : nodes) {
+			for (int c=0; c<node.getChildCount(); c++) {
+				affected.add(node.getChild(c));
+			}
+			addWithAncestors(affected, node);
+		}
+		chainIndex = null;
+		invalidateHitCache();
+		statistics.update(affected);
+		recomputeStatistics();
+		if (prewarming) {
+			prewarm();
+		}
+	}
+	
+	/**
+	 * Add the given node and its ancestors (up to root) to the given set.
+	 * Stops at the first ancestor already in the set, so adding many nodes costs time proportional to the set.
+	 */
+	private void addWithAncestors(final Set<ContextTreeNode> nodes, final ContextTreeNode node) {
+		ContextTreeNode n = node;
+		while (n!=null && nodes.add(n) && n!=root) {
+			n = n.getParent();
+		}
+	}
+
+	/**
+	 * Show what the source loaded since the last frame,
+	 * or the latest version of the tree of the source, if it published a newer one.
+	 * Called at the start of each frame (on the event dispatch thread).
+	 */
+	void pollSource() {
+		final TreeSource source = this.source;
+		if (source==null) {
+			return;
+		}
+		if (!loadedNodes.isEmpty()) {
+			treeLoaded(loadedNodes);
+			loadedNodes.clear();
+		}
+		if (sourceVersion==null) {
+			return;
+		}
+		final TreeVersion version = source.getLatestVersion();
+		if (version==null || version.getNumber()==sourceVersion.getNumber()) {
+			return;
+		}
+		// the changed nodes only suffice if we did not skip a version
+		final boolean consecutive = version.getNumber()==sourceVersion.getNumber()+1;
+		sourceVersion = version;
+		treeReplaced(version.getRoot(), consecutive?version.getChangedNodes():null);
+	}
+
+	/**
+	 * Called when the source replaced the tree with a newer version.
+	 * Keeps top and current (the nodes at the same positions in the new version),
+	 * and updates the maxima from the changed nodes only (if known, otherwise from the whole tree).
+	 */
+	private void treeReplaced(final ContextTreeNode newRoot, final List<ContextTreeNode> changedNodes) {
+		final ContextTreeNode oldRoot = root;
+		final ContextTreeNode oldTop = top;
+		final ContextTreeNode oldCurrent = current;
+		root = newRoot;
+		top = findSamePosition(oldRoot, oldTop, newRoot);
+		current = findSamePosition(oldRoot, oldCurrent, newRoot);
+		chainIndex = null;
+		invalidateHitCache();
+		if (changedNodes!=null) {
+			statistics.grow(newRoot, changedNodes);
+		} else {
+			statistics.setRoot(newRoot);
+		}
+		recomputeStatistics();
+		fireTreeChanged();
+	}
+	
+	/**
+	 * Find the node at the same position (same child indices from the root) in a newer version of a tree,
+	 * in which children only got appended.
+	 */
+	private static ContextTreeNode findSamePosition(final ContextTreeNode oldRoot, final ContextTreeNode node, final ContextTreeNode newRoot) {
+		if (node==null) {
+			return null;
+		}
+		final ArrayList<Integer> path = new ArrayList<Integer>();
+		ContextTreeNode n = node;
+		while (n!=oldRoot && n.getParent()!=null) {
+			final ContextTreeNode parent = n.getParent();
+			int index = 0;
+			while (parent.getChild(index)!=n) {
+				index++;
+			}
+			path.add(index);
+			n = parent;
+		}
+		ContextTreeNode result = newRoot;
+		for (int i=path.size()-1; i>=0 && path.get(i)<result.getChildCount(); i--) {
+			result = result.getChild(path.get(i));
+		}
+		return result;
+	}
+
+	/**
+	 * The values of the given nodes changed in place, but the structure of the tree did not
+	 * (e.g., the counters of a live profile got incremented).
+	 * Has to be called on the event dispatch thread, after the values changed.
+	 * 
+	 * Updates the view in time proportional to the change, not to the tree:
+	 * the changes get propagated to the ancestors of the given nodes (whose inclusive values change along),
+	 * the maxima get updated from the affected nodes only (see AttributeStatistics.update()),
+	 * the RenderPlan gets re-laid out only below the affected entries (see RenderPlan.update()),
+	 * and only the regions of the updated entries get repainted (see TreeViewRenderer.getRepaintBounds()),
+	 * both where they were drawn in the old plan and where they get drawn in the new one.
+	 * The view falls back to rebuilding the plan and repainting everything
+	 * when the change affects which nodes are shown, or how all of them are normalized (a maximum changed, or the size of top),
+	 * and to repainting everything when more than a small part of the plan changed, or when an overlay shows changed values.
+	 */
+	public void nodesChanged(final Collection<ContextTreeNode> changedNodes) {
+		final ContextTreeNode root = this.root;
+		if (root==null || changedNodes.isEmpty()) {
+			return;
+		}
+		final HashSet<ContextTreeNode> affected = new HashSet<ContextTreeNode>();
+		for (final ContextTreeNode node : changedNodes) {
+			addWithAncestors(affected, node);
+		}
+		final boolean maximaChanged = statistics.update(affected);
+		recomputeStatistics();
+		hitParameters = null;
+		hitPlan = null;
+		tooltips.clear();
+		detailPlans = null;
+		final RenderParameters parameters = getRenderParameters();
+		final RenderPlan oldPlan = renderPlan;
+		final RenderPlan plan = (oldPlan!=null && oldPlan.isFor(root, top, parameters))?oldPlan.update(affected, new HashSet<ContextTreeNode>(changedNodes)):null;
+		renderPlan = plan;
+		if (plan==null || maximaChanged || parameters.getLevelOfDetail() || isResizing()
+				|| plan.getUpdatedEntryCount()>plan.size()/MAX_PARTIAL_REPAINT_FRACTION
+				|| parameters.getShowPropertiesOverlay()
+				|| (parameters.getShowInfoOverlay() && current!=null && affected.contains(current))) {
+			// repainting everything once is cheaper than many partial regions (and the properties overlay shows values of root)
+			requestFrame();
+			return;
+		}
+		final Surface surface = new Surface(getWidth(), getHeight());
+		for (int i=0; i<plan.getUpdatedEntryCount(); i++) {
+			// the entries of both plans correspond by index
+			final int entry = plan.getUpdatedEntry(i);
+			final Rectangle oldRegion = renderer.getRepaintBounds(oldPlan, entry, surface, parameters);
+			final Rectangle region = renderer.getRepaintBounds(plan, entry, surface, parameters);
+			if (oldRegion==null || region==null) {
+				requestFrame();
+				return;
+			}
+			frameScheduler.requestFrame(oldRegion.union(region));
+		}
+	}
+
 	/**
 	 * Show a subtree, where we know the ContextTree to which that subtree belongs.
 	 */
 	public void setRoot(final ContextTree tree, final ContextTreeNode subtreeRoot) {
+		if (source!=null) {
+			source.removeTreeSourceListener(sourceListener);
+			restoreSizeAttribute();
+			source = null;
+			sourceVersion = null;
+			loadedNodes.clear();
+		}
 		this.tree = tree;
 		this.root = subtreeRoot;
 		this.top = subtreeRoot;
 		current = null;
+		chainIndex = null;
+		invalidateHitCache();
+		statistics.setRoot(subtreeRoot);
 		recomputeStatistics();
-		repaint();
+		if (prewarming) {
+			prewarm();
+		}
+		requestFrame();
 		fireTreeChanged();
 	}
 	
+	/**
+	 * Get the maximum value of the given attribute over all nodes of the tree
+	 * (Long.MIN_VALUE if there is no tree).
+	 * The maxima are cached until the root changes.
+	 */
+	public final long getMaximum(final LongAttribute attribute) {
+		return statistics.getMaximum(attribute);
+	}
+	
+	/**
+	 * Enable or disable prewarming.
+	 * When enabled, whenever a new root is set, the maxima of all available size, saturation, 
+	 * and renderer-specific (e.g., height) attributes get computed on low-priority background threads,
+	 * so that switching between them in the menus is instant.
+	 * This requires the attributes to be safe to evaluate on a background thread.
+	 */
+	public void setPrewarming(final boolean prewarming) {
+		this.prewarming = prewarming;
+		if (prewarming) {
+			prewarm();
+		}
+	}
+	
+	public boolean isPrewarming() {
+		return prewarming;
+	}
+	
+	private void prewarm() {
+		final ArrayList<LongAttribute> attributes = new ArrayList<LongAttribute>();
+		attributes.addAll(configuration.lookup(AVAILABLE_SATURATION_ATTRIBUTES).getLongAttributes());
+		attributes.addAll(configuration.lookup(AVAILABLE_SIZE_ATTRIBUTES).getLongAttributes());
+		for (final TreeViewRenderer renderer : availableRenderers) {
+			renderer.addPrewarmAttributes(attributes);
+		}
+		statistics.prewarm(attributes);
+	}
+	
 	public void recomputeStatistics() {
 		recomputeMaxSaturation();
 		renderer.recomputeStatistics(); //TODO: if switching between multiple renderers, maybe ask all of them to recompute?
@@ -709,7 +1405,7 @@ public final class TreeView extends JComponent implements Printable {
 	
 	public void zoomTo(final ContextTreeNode top) {
 		this.top = top;
-		repaint();
+		requestFrame();
 		fireTopNodeChanged();
 	}
 
@@ -720,11 +1416,27 @@ public final class TreeView extends JComponent implements Printable {
 
 	@Override
 	public String getToolTipText(final MouseEvent ev) {
-		if (getShowTooltips()) {
-			final StringAttribute toolTipAttribute = getTooltipAttribute();
-			final ContextTreeNode node = findNode(ev.getX(), ev.getY());
+		final RenderParameters parameters = getRenderParameters();
+		if (parameters.getShowTooltips()) {
+			final int entry = findEntry(ev.getX(), ev.getY());
+			if (entry>=0 && hitPlan.isAggregate(entry)) {
+				return getAggregateToolTipText(hitPlan, entry, parameters);
+			}
+			if (entry>=0 && hitPlan.isChain(entry)) {
+				return getChainToolTipText(hitPlan, entry, parameters);
+			}
+			final ContextTreeNode node = entry<0?null:hitPlan.getNode(entry);
 			if (node!=null) {
-				return (String)toolTipAttribute.getValue(node);
+				if (tooltipAttribute!=parameters.getTooltipAttribute()) {
+					tooltips.clear();
+					tooltipAttribute = parameters.getTooltipAttribute();
+				}
+				String tooltip = tooltips.get(node);
+				if (tooltip==null) {
+					tooltip = (String)tooltipAttribute.getValue(node);
+					tooltips.put(node, tooltip);
+				}
+				return tooltip;
 			} else {
 				return null;
 			}
@@ -733,38 +1445,173 @@ public final class TreeView extends JComponent implements Printable {
 		}
 	}
 
+	private String getAggregateToolTipText(final RenderPlan plan, final int entry, final RenderParameters parameters) {
+		final ContextTreeNode parent = plan.getNode(entry);
+		final long parentSize = plan.getSize(plan.getParent(entry));
+		final long size = plan.getSize(entry);
+		return plan.getAggregateCount(entry)+" other children of "+parameters.getLabelAttribute().getValue(parent)+
+				", "+parameters.getSizeAttribute().getName()+": "+size+
+				(parentSize==0?"":" ("+(size*100/parentSize)+"% of parent)");
+	}
+
+	/**
+	 * List the frames collapsed into a compressed chain (the first CHAIN_TOOLTIP_LINES, and the last one).
+	 */
+	private String getChainToolTipText(final RenderPlan plan, final int entry, final RenderParameters parameters) {
+		final StringAttribute labelAttribute = parameters.getLabelAttribute();
+		final int length = plan.getChainLength(entry);
+		final ContextTreeNode end = plan.getChainEnd(entry);
+		final StringBuffer sb = new StringBuffer("<html>");
+		sb.append("Chain of "+length+" nodes, "+parameters.getSizeAttribute().getName()+": "+plan.getSize(entry));
+		ContextTreeNode node = plan.getNode(entry);
+		int line = 0;
+		while (node!=end && line<CHAIN_TOOLTIP_LINES) {
+			sb.append("<br>"+escape(""+labelAttribute.getValue(node)));
+			node = node.getChild(0);
+			line++;
+		}
+		if (node!=end) {
+			sb.append("<br>... "+(length-line-1)+" more ...");
+		}
+		sb.append("<br>"+escape(""+labelAttribute.getValue(end)));
+		sb.append("</html>");
+		return sb.toString();
+	}
+	
+	private static String escape(final String text) {
+		return text.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;");
+	}
+
+	//--- frame scheduling
+	/**
+	 * Request a new frame.
+	 * Renderers and listeners should call this instead of repaint():
+	 * all requests arriving within one frame interval are coalesced into a single repaint.
+	 * Like repaint(), this may be called from any thread
+	 * (requests from other threads get passed on to the event dispatch thread).
+	 */
+	public void requestFrame() {
+		if (!SwingUtilities.isEventDispatchThread()) {
+			SwingUtilities.invokeLater(new Runnable() {
+				public void run() {
+					frameScheduler.requestFrame();
+				}
+			});
+			return;
+		}
+		frameScheduler.requestFrame();
+	}
+	
+	/**
+	 * Called by the FrameScheduler, at most once per frame, 
+	 * to hit-test the last known mouse position.
+	 * Listeners only get notified if the node under the mouse actually changed.
+	 */
+	void updateHover() {
+		if (isResizing()) {
+			// the layout does not match the scaled preview
+			return;
+		}
+		final ContextTreeNode node = findNode(mouseX, mouseY);
+		if (node!=current) {
+			current = node;
+			fireCurrentNodeChanged();
+		}
+	}
+	
+	
+	//--- resizing
+	/**
+	 * Called for every resize event.
+	 * The first event of a resize gesture keeps the last rendered frame (the frame buffer, without rendering again),
+	 * which then gets shown scaled until the size has settled.
+	 */
+	private void resizeStarted() {
+		if (resizePreview==null && frameBuffer!=null && getTop()!=null) {
+			resizePreview = frameBuffer;
+			frameBuffer = null;
+		}
+		resizeTimer.restart();
+	}
+	
+	/**
+	 * Called once no resize event arrived for RESIZE_SETTLE_DELAY milliseconds.
+	 * Evicts the frame captured for the old size and renders at the final size.
+	 */
+	private void resizeSettled() {
+		if (resizePreview!=null) {
+			resizePreview.flush();
+			resizePreview = null;
+		}
+		requestFrame();
+	}
+	
+	public final boolean isResizing() {
+		return resizePreview!=null;
+	}
+	
 	@Override
 	protected void paintComponent(final Graphics g) {
 		final Graphics2D g2 = (Graphics2D)g; 
-		g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
 		final int width = getWidth();
 		final int height = getHeight();
-		g.setColor(getBackground());
-		g.fillRect(0, 0, width, height);
-		render(g2, new Surface(getWidth(), getHeight()));
+		if (!isDoubleBuffered()) {
+			// not painting to the screen (e.g., printing): render straight into g, at its resolution
+			g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+			g2.setColor(getBackground());
+			g2.fillRect(0, 0, width, height);
+			render(g2, new Surface(width, height));
+			return;
+		}
+		if (resizePreview!=null) {
+			g2.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+			g2.drawImage(resizePreview, 0, 0, width, height, null);
+			return;
+		}
+		if (width<=0 || height<=0) {
+			return;
+		}
+		// render into the retained frame buffer (only the region to repaint, if the buffer is still valid)
+		Rectangle clip = g.getClipBounds();
+		if (frameBuffer==null || frameBuffer.getWidth()!=width || frameBuffer.getHeight()!=height) {
+			if (frameBuffer!=null) {
+				frameBuffer.flush();
+			}
+			frameBuffer = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+			clip = null;
+		}
+		final Graphics2D bg = frameBuffer.createGraphics();
+		if (clip!=null) {
+			bg.setClip(clip);
+		}
+		bg.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+		bg.setFont(getFont());
+		bg.setColor(getBackground());
+		bg.fillRect(0, 0, width, height);
+		render(bg, new Surface(width, height));
+		bg.dispose();
+		g2.drawImage(frameBuffer, 0, 0, null);
 	}
 
 	public void render(final Graphics2D g2, final Surface surface) {
 		final ContextTreeNode top = getTop();
 		if (top!=null) {
-			renderTree(g2, surface);
-			if (getShowInfoOverlay()) {
-				renderInfoOverlay(g2, surface);
+			// one set of parameters for the whole frame
+			final RenderParameters parameters = getRenderParameters();
+			renderer.renderTree(g2, surface, getRenderPlan(surface), parameters);
+			if (parameters.getShowInfoOverlay()) {
+				renderInfoOverlay(g2, surface, parameters);
 			}
-			if (getShowPropertiesOverlay()) {
-				renderPropertiesOverlay(g2, surface);
+			if (parameters.getShowPropertiesOverlay()) {
+				renderPropertiesOverlay(g2, surface, parameters);
 			}
 		}		
 	}
 	
-	private void renderTree(final Graphics2D g2, final Surface surface) {
-		renderer.renderTree(g2, surface);
-	}
-
-	protected void renderInfoOverlay(final Graphics2D g, final Surface surface) {
+	protected void renderInfoOverlay(final Graphics2D g, final Surface surface, final RenderParameters parameters) {
 		final ContextTree tree = getTree();
 		final ContextTreeNode current = getCurrent();
-		final List<StringAttribute> infoAttributes = getInfoLineAttributes();
+		final List<StringAttribute> infoAttributes = parameters.getInfoLineAttributes();
 
 		final FontMetrics fm = g.getFontMetrics();
 		final int lineHeight = fm.getHeight();
@@ -793,12 +1640,12 @@ public final class TreeView extends JComponent implements Printable {
 		}
 	}
 
-	protected void renderPropertiesOverlay(final Graphics2D g, final Surface surface) {
+	protected void renderPropertiesOverlay(final Graphics2D g, final Surface surface, final RenderParameters parameters) {
 		final ContextTreeNode root = getRoot();
 		final ContextTreeNode current = getCurrent();
-		final StringAttribute hueMetric = getHueAttribute();
-		final LongAttribute saturationMetric = getSaturationAttribute();
-		final LongAttribute sizeMetric = getSizeAttribute();
+		final StringAttribute hueMetric = parameters.getHueAttribute();
+		final LongAttribute saturationMetric = parameters.getSaturationAttribute();
+		final LongAttribute sizeMetric = parameters.getSizeAttribute();
 		final FontMetrics fm = g.getFontMetrics();
 		if (current!=null) {
 			final long sizeRootValue = sizeMetric.evaluate(root); 
@@ -823,7 +1670,7 @@ public final class TreeView extends JComponent implements Printable {
 				// saturation
 				if (saturationMetric!=null) {
 					y -= 15;
-					g.setColor(new Color(Colors.hsbToRgb(Colors.createHsb(0, getSaturation(current), 200))));
+					g.setColor(new Color(Colors.hsbToRgb(Colors.createHsb(0, getSaturation(current, parameters), 200))));
 					g.fillOval(5, y-15, 14, 14);
 					g.setColor(Color.BLACK);
 					g.drawString(saturationMetric.getName()+": "+saturationMetric.evaluate(current), 23, y-fm.getDescent());
@@ -832,7 +1679,7 @@ public final class TreeView extends JComponent implements Printable {
 				if (hueMetric!=null) {
 					final String hueMetricValue = hueMetric.evaluate(current);
 					y -= 15;
-					g.setColor(new Color(Colors.hsbToRgb(Colors.createHsb(getHue(current), 255, 200))));
+					g.setColor(new Color(Colors.hsbToRgb(Colors.createHsb(getHue(current, parameters), 255, 200))));
 					g.fillOval(5, y-15, 14, 14);
 					g.setColor(Color.BLACK);
 					g.drawString(hueMetric.getName()+": "+(hueMetricValue==null?"":hueMetricValue), 23, y-fm.getDescent());
@@ -842,25 +1689,29 @@ public final class TreeView extends JComponent implements Printable {
 	}
 
 	public final int getPathLengthToRoot(final ContextTreeNode node) {
-		if (node.isRoot()) {
-			return 0;
-		} else {
-			return getPathLengthToRoot(node.getParent())+1;
+		int length = 0;
+		for (ContextTreeNode n = node; !n.isRoot(); n = n.getParent()) {
+			length++;
 		}
+		return length;
 	}
 
 	public final int getHsb(final ContextTreeNode node, final boolean focus) {
-		if (getHighlightAttribute().evaluate(node)) {
-			final int hue = getHue(node);
-			final int saturation = getSaturation(node);
+		return getHsb(node, focus, getRenderParameters());
+	}
+	
+	public final int getHsb(final ContextTreeNode node, final boolean focus, final RenderParameters parameters) {
+		if (parameters.getHighlightAttribute().evaluate(node)) {
+			final int hue = getHue(node, parameters);
+			final int saturation = getSaturation(node, parameters);
 			return Colors.createHsb(hue, saturation, focus?100:200);
 		} else {
 			return Colors.createHsb(180, 0, focus?100:200);
 		}
 	}
 
-	private final int getHue(final ContextTreeNode node) {
-		final StringAttribute hueMetric = getHueAttribute();
+	private final int getHue(final ContextTreeNode node, final RenderParameters parameters) {
+		final StringAttribute hueMetric = parameters.getHueAttribute();
 		if (hueMetric==null) {
 			return 0;
 		} else {
@@ -870,8 +1721,8 @@ public final class TreeView extends JComponent implements Printable {
 		}
 	}
 
-	private final int getSaturation(final ContextTreeNode node) {
-		final LongAttribute saturationMetric = getSaturationAttribute();
+	private final int getSaturation(final ContextTreeNode node, final RenderParameters parameters) {
+		final LongAttribute saturationMetric = parameters.getSaturationAttribute();
 		if (saturationMetric==null) {
 			return 200;
 		} else {
@@ -881,18 +1732,9 @@ public final class TreeView extends JComponent implements Printable {
 
 
 	private void recomputeMaxSaturation() {
-		if (getSaturationAttribute()!=null) {
-			maxSaturation = Long.MIN_VALUE;
-			if (root!=null) {
-				recomputeMaxSaturation(root);
-			}
-		}
-	}
-
-	private void recomputeMaxSaturation(final ContextTreeNode node) {
-		maxSaturation = Math.max(maxSaturation, getSaturationAttribute().evaluate(node));
-		for (final ContextTreeNode child : node) {
-			recomputeMaxSaturation(child);
+		final LongAttribute saturationAttribute = getSaturationAttribute();
+		if (saturationAttribute!=null) {
+			maxSaturation = statistics.getMaximum(saturationAttribute);
 		}
 	}
 
@@ -957,8 +1799,31 @@ public final class TreeView extends JComponent implements Printable {
 		listeners.add(li);
 	}
 
+	/**
+	 * Register a listener that does not keep itself alive
+	 * (see Property.addWeakPropertyListener()).
+	 */
+	public void addWeakTreeViewListener(final TreeViewListener li) {
+		listeners.addWeak(li);
+	}
+
+	/**
+	 * Register a listener that gets notified on a background thread
+	 * instead of the event dispatch thread.
+	 * Use this for slow listeners, which otherwise would delay hovering and repainting.
+	 * See AsynchronousTreeViewListener for the ordering guarantees.
+	 */
+	public void addAsynchronousTreeViewListener(final TreeViewListener li) {
+		listeners.add(new AsynchronousTreeViewListener(li));
+	}
+
 	public void removeTreeViewListener(final TreeViewListener li) {
 		listeners.remove(li);
+		for (final TreeViewListener l : listeners) {
+			if (l instanceof AsynchronousTreeViewListener && ((AsynchronousTreeViewListener)l).getDelegate()==li) {
+				listeners.remove(l);
+			}
+		}
 	}
 
 	private void fireTreeChanged() {
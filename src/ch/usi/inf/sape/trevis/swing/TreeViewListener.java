@@ -17,6 +17,10 @@ package ch.usi.inf.sape.trevis.swing;
  * Note: To observe the changes in a TreeView's Configuration,
  * register a ConfigurationListener on the Configuration.
  * 
+ * Listeners registered with TreeView.addTreeViewListener() are notified synchronously
+ * on the event dispatch thread, listeners registered with TreeView.addAsynchronousTreeViewListener()
+ * on a background thread (see AsynchronousTreeViewListener).
+ * 
  * @author Matthias.Hauswirth@usi.ch
  */
 public interface TreeViewListener {
@@ -10,12 +10,17 @@
  */
 package ch.usi.inf.sape.trevis.swing;
 
+import java.awt.Color;
 import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.util.List;
+import java.util.Set;
 
 import javax.swing.JPopupMenu;
 
 import ch.usi.inf.sape.trevis.model.ContextTree;
 import ch.usi.inf.sape.trevis.model.ContextTreeNode;
+import ch.usi.inf.sape.trevis.model.attribute.LongAttribute;
 
 
 /**
@@ -68,15 +73,123 @@ public abstract class TreeViewRenderer {
 		return view.getHeight();
 	}
 	
-	protected final int getHsb(final ContextTreeNode node, final boolean focus) {
-		return view.getHsb(node, focus);
+	/**
+	 * Ask the TreeView for a new frame (instead of calling repaint() directly).
+	 */
+	protected final void requestFrame() {
+		view.requestFrame();
+	}
+	
+	/**
+	 * The color of aggregate entries (see RenderPlan.isAggregate()).
+	 */
+	protected static final Color AGGREGATE_COLOR = new Color(160, 160, 160);
+	
+	/**
+	 * The color of placeholders for children that failed to load (see TreeSource.isLoadFailed()).
+	 */
+	protected static final Color LOAD_FAILED_COLOR = new Color(200, 60, 60);
+	
+	/**
+	 * The color and size (in pixels) of the marks on entries whose children got cut by the depth horizon
+	 * (see RenderPlan.isTruncated()).
+	 */
+	protected static final Color TRUNCATION_COLOR = Color.BLACK;
+	protected static final int TRUNCATION_MARK_SIZE = 3;
+	
+	/**
+	 * Get the label to show for the given entry:
+	 * "N others" for an aggregate entry, "first ... last" for a compressed chain,
+	 * and the value of the label attribute otherwise.
+	 */
+	protected final String getLabel(final RenderPlan plan, final int entry, final RenderParameters parameters) {
+		if (plan.isAggregate(entry)) {
+			return plan.getAggregateCount(entry)+" others";
+		}
+		final String label = ""+parameters.getLabelAttribute().getValue(plan.getNode(entry));
+		if (plan.isChain(entry)) {
+			return label+" \u2026 "+parameters.getLabelAttribute().getValue(plan.getChainEnd(entry));
+		}
+		return label;
+	}
+	
+	/**
+	 * Get the number of distinguishable units (e.g., pixels) along which this renderer
+	 * divides the extent of top on the given surface.
+	 * Used to pick the level of detail of the RenderPlan.
+	 */
+	public int getResolution(final Surface surface) {
+		return surface.getWidth();
+	}
+	
+	/**
+	 * Get the region of the given surface to repaint when the given entry changed 
+	 * (see RenderPlan.getUpdatedEntry()), or null if the whole surface has to be repainted.
+	 * The region has to cover everything drawn differently because of the change
+	 * (e.g., descendants that moved along with the entry).
+	 * Renderers that override this should skip the parts of the plan outside the clip in renderTree().
+	 */
+	public Rectangle getRepaintBounds(final RenderPlan plan, final int entry, final Surface surface, final RenderParameters parameters) {
+		return null;
+	}
+	
+	/**
+	 * Is the given node a placeholder for children that have not been loaded yet?
+	 * Placeholders are drawn like aggregates (AGGREGATE_COLOR).
+	 */
+	protected final boolean isPlaceholder(final ContextTreeNode node) {
+		return view.isPlaceholder(node);
+	}
+	
+	/**
+	 * Get the color of an aggregate or placeholder entry with the given node:
+	 * LOAD_FAILED_COLOR for a placeholder whose children failed to load, AGGREGATE_COLOR otherwise.
+	 */
+	protected final Color getPlaceholderColor(final ContextTreeNode node) {
+		return view.isLoadFailed(node)?LOAD_FAILED_COLOR:AGGREGATE_COLOR;
+	}
+	
+	protected final int getHsb(final ContextTreeNode node, final boolean focus, final RenderParameters parameters) {
+		return view.getHsb(node, focus, parameters);
+	}
+	
+	/**
+	 * Declare which CacheTiers depend on which of the properties added in prepareConfiguration().
+	 * Properties not declared by anybody invalidate all tiers.
+	 */
+	public void declareDependencies(final DependencyRegistry registry) {
+	}
+	
+	/**
+	 * Called by the TreeView (once per changed Property, also for batched changes)
+	 * when this is the current renderer and the given Property changed,
+	 * with the tiers that depend on that Property.
+	 * Override this to drop caches or recompute statistics.
+	 */
+	public void invalidateCaches(final Set<CacheTier> tiers, final Property property) {
+	}
+	
+	/**
+	 * Add the attributes whose maxima (see TreeView.getMaximum()) this renderer may need,
+	 * so the TreeView can compute them in the background.
+	 */
+	public void addPrewarmAttributes(final List<LongAttribute> attributes) {
+	}
+	
+	protected final long getMaximum(final LongAttribute attribute) {
+		return view.getMaximum(attribute);
 	}
 	
 	public abstract String getName();
 	public abstract void recomputeStatistics();
 	public abstract void prepareConfiguration(final Configuration configuration);
 	public abstract void addPopupMenuItems(final JPopupMenu popup);
-	public abstract void renderTree(final Graphics2D g2, final Surface surface);
-	public abstract ContextTreeNode findNode(int x, int y);
+	public abstract void renderTree(final Graphics2D g2, final Surface surface, final RenderPlan plan, final RenderParameters parameters);
+	
+	/**
+	 * Find the entry of the given plan that is shown at the given position.
+	 * Return -1 if there is none.
+	 */
+	public abstract int findEntry(final RenderPlan plan, final int x, final int y, final RenderParameters parameters);
 
 }
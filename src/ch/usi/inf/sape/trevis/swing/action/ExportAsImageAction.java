@@ -24,16 +24,25 @@ import ch.usi.inf.sape.trevis.swing.export.ImageExportDialog;
 
 /**
  * Export the contents of the given TreeView as an image.
+ * The ImageExportDialog (which renders a preview of the tree)
+ * only gets created when the action is performed.
  * 
  * @author Matthias.Hauswirth@usi.ch
  */
 public final class ExportAsImageAction extends AbstractAction {
 
-	private final ImageExportDialog dialog;
 	private final TreeView view;
 	
 	
 	public ExportAsImageAction(final TreeView view) {
+		setEnabled(true);
+		putValue(NAME, "Export as image");
+		putValue(SHORT_DESCRIPTION, "Export tree as image file");
+		this.view = view;
+	}
+	
+	public void actionPerformed(final ActionEvent ev) {
+		final ImageExportDialog dialog;
 		final Component root = SwingUtilities.getRoot(view);
 		if (root instanceof Frame) {
 			dialog = new ImageExportDialog((Frame)root, view);
@@ -42,14 +51,9 @@ public final class ExportAsImageAction extends AbstractAction {
 		} else {
 			dialog = new ImageExportDialog((Frame)null, view);
 		}
-		setEnabled(true);
-		putValue(NAME, "Export as image");
-		putValue(SHORT_DESCRIPTION, "Export tree as image file");
-		this.view = view;
-	}
-	
-	public void actionPerformed(final ActionEvent ev) {
+		// the dialog is modal
 		dialog.setVisible(true);
+		dialog.dispose();
 	}
 	
 }
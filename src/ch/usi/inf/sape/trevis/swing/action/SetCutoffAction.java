@@ -14,6 +14,8 @@ import java.awt.event.ActionEvent;
 
 import javax.swing.AbstractAction;
 
+import ch.usi.inf.sape.trevis.swing.Property;
+import ch.usi.inf.sape.trevis.swing.PropertyListener;
 import ch.usi.inf.sape.trevis.swing.TreeView;
 
 
@@ -28,6 +30,7 @@ public final class SetCutoffAction extends AbstractAction {
 
 	private final TreeView view;
 	private final int cutoff;
+	private final PropertyListener propertyListener; // registered weakly, kept alive by this action
 	
 	
 	public SetCutoffAction(final int cutoff, final TreeView view) {
@@ -36,6 +39,14 @@ public final class SetCutoffAction extends AbstractAction {
 		putValue(NAME, cutoff==0?"Show everything":(""+cutoff/10.0+"%"));
 		putValue(SHORT_DESCRIPTION, cutoff==0?"Do not cut off any nodes":("Cut off nodes smaller than "+cutoff/10.0+"% of the root's inclusive size"));
 		this.view = view;
+		
+		// register listeners (weakly, so the Property does not keep this action alive)
+		propertyListener = new PropertyListener() {
+			public void propertyChanged(final Property property) {
+				setEnabled(property.getInt()!=cutoff);
+			}
+		};
+		view.getConfiguration().lookup(TreeView.CUTOFF).addWeakPropertyListener(propertyListener);
 	}
 	
 	public void actionPerformed(final ActionEvent ev) {
@@ -28,6 +28,7 @@ public final class SetDoubleAttributePropertyAction extends AbstractAction {
 
 	private final Property property;
 	private final DoubleAttribute attribute;
+	private final PropertyListener propertyListener; // registered weakly, kept alive by this action
 	
 	
 	public SetDoubleAttributePropertyAction(final Property property, final DoubleAttribute attribute) {
@@ -37,12 +38,13 @@ public final class SetDoubleAttributePropertyAction extends AbstractAction {
 		putValue(NAME, attribute.getName());
 		putValue(SHORT_DESCRIPTION, "Set "+property.getName()+" to "+attribute.getDescription());
 		
-		// register listeners
-		property.addPropertyListener(new PropertyListener() {
+		// register listeners (weakly, so the Property does not keep this action alive)
+		propertyListener = new PropertyListener() {
 			public void propertyChanged(final Property property) {
 				setEnabled(property.getDoubleAttribute()!=attribute);
 			}
-		});
+		};
+		property.addWeakPropertyListener(propertyListener);
 	}
 		
 	public void actionPerformed(final ActionEvent ev) {
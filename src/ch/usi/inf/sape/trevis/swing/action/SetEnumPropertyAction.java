@@ -27,6 +27,7 @@ public final class SetEnumPropertyAction<T> extends AbstractAction {
 
 	private final Property property;
 	private final T value;
+	private final PropertyListener propertyListener; // registered weakly, kept alive by this action
 	
 	
 	public SetEnumPropertyAction(final Property property, final T value, final String valueName, final String valueDescription) {
@@ -36,12 +37,13 @@ public final class SetEnumPropertyAction<T> extends AbstractAction {
 		putValue(NAME, valueName);
 		putValue(SHORT_DESCRIPTION, valueDescription);
 		
-		// register listeners
-		property.addPropertyListener(new PropertyListener() {
+		// register listeners (weakly, so the Property does not keep this action alive)
+		propertyListener = new PropertyListener() {
 			public void propertyChanged(final Property property) {
 				setEnabled(property.getValue()!=value);
 			}
-		});
+		};
+		property.addWeakPropertyListener(propertyListener);
 	}
 		
 	public void actionPerformed(final ActionEvent ev) {
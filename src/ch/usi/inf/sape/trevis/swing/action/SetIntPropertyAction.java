@@ -27,6 +27,7 @@ public final class SetIntPropertyAction extends AbstractAction {
 
 	private final Property property;
 	private final int value;
+	private final PropertyListener propertyListener; // registered weakly, kept alive by this action
 	
 	
 	public SetIntPropertyAction(final Property property, final int value, final String valueName, final String valueDescription) {
@@ -36,12 +37,13 @@ public final class SetIntPropertyAction extends AbstractAction {
 		putValue(NAME, valueName);
 		putValue(SHORT_DESCRIPTION, valueDescription);
 		
-		// register listeners
-		property.addPropertyListener(new PropertyListener() {
+		// register listeners (weakly, so the Property does not keep this action alive)
+		propertyListener = new PropertyListener() {
 			public void propertyChanged(final Property property) {
 				setEnabled(property.getInt()!=value);
 			}
-		});
+		};
+		property.addWeakPropertyListener(propertyListener);
 	}
 		
 	public void actionPerformed(final ActionEvent ev) {
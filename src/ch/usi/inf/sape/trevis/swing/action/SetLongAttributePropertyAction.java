@@ -28,6 +28,7 @@ public final class SetLongAttributePropertyAction extends AbstractAction {
 
 	private final Property property;
 	private final LongAttribute attribute;
+	private final PropertyListener propertyListener; // registered weakly, kept alive by this action
 	
 	
 	public SetLongAttributePropertyAction(final Property property, final LongAttribute attribute) {
@@ -37,12 +38,13 @@ public final class SetLongAttributePropertyAction extends AbstractAction {
 		putValue(NAME, attribute.getName());
 		putValue(SHORT_DESCRIPTION, "Set "+property.getName()+" to "+attribute.getDescription());
 		
-		// register listeners
-		property.addPropertyListener(new PropertyListener() {
+		// register listeners (weakly, so the Property does not keep this action alive)
+		propertyListener = new PropertyListener() {
 			public void propertyChanged(final Property property) {
 				setEnabled(property.getLongAttribute()!=attribute);
 			}
-		});
+		};
+		property.addWeakPropertyListener(propertyListener);
 	}
 		
 	public void actionPerformed(final ActionEvent ev) {
@@ -16,6 +16,7 @@ import javax.swing.AbstractAction;
 
 import ch.usi.inf.sape.trevis.swing.TreeView;
 import ch.usi.inf.sape.trevis.swing.TreeViewAdapter;
+import ch.usi.inf.sape.trevis.swing.TreeViewListener;
 import ch.usi.inf.sape.trevis.swing.TreeViewRenderer;
 
 
@@ -28,6 +29,7 @@ public final class ShowAsAction extends AbstractAction {
 
 	private final TreeViewRenderer renderer;
 	private final TreeView view;
+	private final TreeViewListener viewListener; // registered weakly, kept alive by this action
 	
 	
 	public ShowAsAction(final TreeViewRenderer renderer, final TreeView view) {
@@ -37,13 +39,14 @@ public final class ShowAsAction extends AbstractAction {
 		putValue(NAME, renderer.getName());
 		putValue(SHORT_DESCRIPTION, "Show tree as a "+renderer.getName());
 		
-		// register listeners
-		view.addTreeViewListener(new TreeViewAdapter() {
+		// register listeners (weakly, so the TreeView does not keep this action alive)
+		viewListener = new TreeViewAdapter() {
 			@Override
 			public void rendererChanged(final TreeView view) {
 				setEnabled(view.getRenderer()!=renderer);
 			}
-		});
+		};
+		view.addWeakTreeViewListener(viewListener);
 	}
 	
 	public void actionPerformed(final ActionEvent ev) {
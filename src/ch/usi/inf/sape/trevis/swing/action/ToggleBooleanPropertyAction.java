@@ -26,6 +26,7 @@ import ch.usi.inf.sape.trevis.swing.PropertyListener;
 public final class ToggleBooleanPropertyAction extends AbstractAction {
 
 	private final Property property;
+	private final PropertyListener propertyListener; // registered weakly, kept alive by this action
 	
 	
 	public ToggleBooleanPropertyAction(final Property property, final String trueName, final String falseName, final String description) {
@@ -34,12 +35,13 @@ public final class ToggleBooleanPropertyAction extends AbstractAction {
 		putValue(NAME, property.getBoolean()?falseName:trueName);
 		putValue(SHORT_DESCRIPTION, description);
 		
-		// register listeners
-		property.addPropertyListener(new PropertyListener() {
+		// register listeners (weakly, so the Property does not keep this action alive)
+		propertyListener = new PropertyListener() {
 			public void propertyChanged(final Property property) {
 				putValue(NAME, property.getBoolean()?falseName:trueName);
 			}
-		});
+		};
+		property.addWeakPropertyListener(propertyListener);
 	}
 		
 	public void actionPerformed(final ActionEvent ev) {
@@ -26,18 +26,25 @@ import ch.usi.inf.sape.trevis.swing.TreeView;
  */
 public final class ZoomToAction  extends AbstractAction {
 
-	private final ContextTreeNode node;
+	private final String label;
+	private ContextTreeNode node;
 	private final TreeView view;
 	
 	
 	public ZoomToAction(final String label, final NodeAttribute nodeNameAttribute, final ContextTreeNode node, final TreeView view) {
-		setEnabled(node!=null);
 		putValue(NAME, label);
-		if (node!=null) {
-			putValue(SHORT_DESCRIPTION, "<html>"+label+"<br><b>"+nodeNameAttribute.getValue(node)+"</b>");
-		}
-		this.node = node;
+		this.label = label;
 		this.view = view;
+		setNode(nodeNameAttribute, node);
+	}
+	
+	/**
+	 * Retarget this action (e.g., when reusing a cached popup menu).
+	 */
+	public void setNode(final NodeAttribute nodeNameAttribute, final ContextTreeNode node) {
+		this.node = node;
+		setEnabled(node!=null);
+		putValue(SHORT_DESCRIPTION, node==null?null:"<html>"+label+"<br><b>"+nodeNameAttribute.getValue(node)+"</b>");
 	}
 	
 	public void actionPerformed(final ActionEvent ev) {
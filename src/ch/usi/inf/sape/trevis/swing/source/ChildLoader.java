@@ -0,0 +1,41 @@
+/*
+ * This file is licensed to You under the "Simplified BSD License".
+ * You may not use this software except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.opensource.org/licenses/bsd-license.php
+ *
+ * See the COPYRIGHT file distributed with this work for information
+ * regarding copyright ownership.
+ */
+package ch.usi.inf.sape.trevis.swing.source;
+
+import java.io.IOException;
+
+
+/**
+ * A ChildLoader provides the nodes of a tree to a LazyTreeSource, one level at a time.
+ * Nodes are identified by the ids the loader assigns in their NodeRecords.
+ * 
+ * The loader gets called on a background thread (one call at a time), and may block (e.g., reading from disk).
+ */
+public interface ChildLoader {
+
+	/**
+	 * Get the number of value columns of the NodeRecords.
+	 */
+	public int getColumnCount();
+	
+	/**
+	 * Get the name of the given value column (e.g., the name of the attribute it was written from).
+	 */
+	public String getColumnName(final int column);
+	
+	public NodeRecord loadRoot() throws IOException;
+	
+	/**
+	 * Load the children of the node with the given id, in order.
+	 */
+	public NodeRecord[] loadChildren(final long id) throws IOException;
+	
+}
@@ -0,0 +1,74 @@
+/*
+ * This file is licensed to You under the "Simplified BSD License".
+ * You may not use this software except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.opensource.org/licenses/bsd-license.php
+ *
+ * See the COPYRIGHT file distributed with this work for information
+ * regarding copyright ownership.
+ */
+package ch.usi.inf.sape.trevis.swing.source;
+
+import ch.usi.inf.sape.trevis.model.ContextTreeNode;
+import ch.usi.inf.sape.trevis.model.attribute.LongAttribute;
+
+
+/**
+ * A LongAttribute for one of the value columns of the nodes of a LazyTreeSource
+ * (e.g., the columns of a MappedTreeSnapshot).
+ * 
+ * A placeholder carries the values of the node whose children it stands for,
+ * so with an inclusive column (e.g., total samples) an unloaded subtree already gets its final size,
+ * and the layout does not change as its children arrive.
+ * Nodes that do not come from a LazyTreeSource have the value 0.
+ */
+public final class ColumnAttribute extends LongAttribute {
+
+	private final String name;
+	private final int column;
+	
+	
+	public ColumnAttribute(final String name, final int column) {
+		this.name = name;
+		this.column = column;
+	}
+	
+	public int getColumn() {
+		return column;
+	}
+	
+	@Override
+	public String getName() {
+		return name;
+	}
+	
+	@Override
+	public String getDescription() {
+		return "Value of column "+name;
+	}
+	
+	@Override
+	public long evaluate(final ContextTreeNode node) {
+		return node instanceof LazyNode?((LazyNode)node).getValue(column):0;
+	}
+	
+	/**
+	 * Column attributes of different sources are equal if they read the same column under the same name
+	 * (so the attribute menus do not get duplicates).
+	 */
+	@Override
+	public boolean equals(final Object other) {
+		if (!(other instanceof ColumnAttribute)) {
+			return false;
+		}
+		final ColumnAttribute attribute = (ColumnAttribute)other;
+		return column==attribute.column && name.equals(attribute.name);
+	}
+	
+	@Override
+	public int hashCode() {
+		return 31*name.hashCode()+column;
+	}
+	
+}
@@ -0,0 +1,80 @@
+/*
+ * This file is licensed to You under the "Simplified BSD License".
+ * You may not use this software except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.opensource.org/licenses/bsd-license.php
+ *
+ * See the COPYRIGHT file distributed with this work for information
+ * regarding copyright ownership.
+ */
+package ch.usi.inf.sape.trevis.swing.source;
+
+import java.util.Collections;
+import java.util.List;
+
+import ch.usi.inf.sape.trevis.model.ContextTree;
+import ch.usi.inf.sape.trevis.model.ContextTreeNode;
+import ch.usi.inf.sape.trevis.model.attribute.LongAttribute;
+import ch.usi.inf.sape.trevis.swing.RenderPlan;
+
+
+/**
+ * A TreeSource for a tree that is completely built in memory.
+ */
+public final class ContextTreeSource implements TreeSource {
+
+	private final ContextTree tree;
+	private final ContextTreeNode root;
+	
+	
+	public ContextTreeSource(final ContextTree tree) {
+		this(tree, tree.getRoot());
+	}
+	
+	/**
+	 * Provide a subtree, where we may not know the ContextTree to which it belongs (tree may be null).
+	 */
+	public ContextTreeSource(final ContextTree tree, final ContextTreeNode root) {
+		this.tree = tree;
+		this.root = root;
+	}
+	
+	public ContextTree getTree() {
+		return tree;
+	}
+	
+	public ContextTreeNode getRoot() {
+		return root;
+	}
+	
+	/**
+	 * The attributes of an in-memory tree are up to the application.
+	 */
+	public List<LongAttribute> getAttributes() {
+		return Collections.emptyList();
+	}
+	
+	public TreeVersion getLatestVersion() {
+		return null;
+	}
+	
+	public boolean isPlaceholder(final ContextTreeNode node) {
+		return false;
+	}
+	
+	public boolean isLoadFailed(final ContextTreeNode node) {
+		return false;
+	}
+	
+	public void prepare(final RenderPlan plan) {
+	}
+	
+	public void addTreeSourceListener(final TreeSourceListener li) {
+		// nothing will ever be loaded
+	}
+	
+	public void removeTreeSourceListener(final TreeSourceListener li) {
+	}
+	
+}
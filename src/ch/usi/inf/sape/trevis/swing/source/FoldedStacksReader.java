@@ -0,0 +1,114 @@
+/*
+ * This file is licensed to You under the "Simplified BSD License".
+ * You may not use this software except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.opensource.org/licenses/bsd-license.php
+ *
+ * See the COPYRIGHT file distributed with this work for information
+ * regarding copyright ownership.
+ */
+package ch.usi.inf.sape.trevis.swing.source;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+
+
+/**
+ * Reads stacks in the "folded" format (one stack per line: frames separated by semicolons,
+ * outermost first, followed by a space and the number of samples, e.g., "main;parse;read 42")
+ * into a StreamingTreeSource.
+ * 
+ * Use load() to show a file in a TreeView while it is being read:
+ * <pre>
+ * view.setSource(FoldedStacksReader.load(file));
+ * </pre>
+ */
+public final class FoldedStacksReader {
+
+	private final StreamingTreeSource source;
+	
+	
+	public FoldedStacksReader(final StreamingTreeSource source) {
+		this.source = source;
+	}
+	
+	/**
+	 * Start reading the given file on a background thread,
+	 * and return the source that will receive its stacks.
+	 * The source gets finished exactly once in any case, also if the file cannot be opened.
+	 * If opening or reading the file fails, the source reports the failure to its listeners (see StreamingTreeSource.fail()).
+	 */
+	public static StreamingTreeSource load(final File file) {
+		final StreamingTreeSource source = new StreamingTreeSource(file.getName());
+		final Thread thread = new Thread(new Runnable() {
+			public void run() {
+				final Reader reader;
+				try {
+					reader = new InputStreamReader(new FileInputStream(file), "UTF-8");
+				} catch (final IOException ex) {
+					System.err.println("Cannot open "+file+": "+ex);
+					source.fail(ex);
+					source.finish();
+					return;
+				}
+				try {
+					// finishes the source
+					new FoldedStacksReader(source).read(reader);
+				} catch (final IOException ex) {
+					System.err.println("Cannot read "+file+": "+ex);
+					source.fail(ex);
+				}
+			}
+		}, "Folded stacks reader");
+		thread.setDaemon(true);
+		thread.start();
+		return source;
+	}
+	
+	/**
+	 * Read all stacks from the given reader (closing it at the end), 
+	 * and finish the source (even if reading fails).
+	 * The count is separated from the stack by any whitespace (surrounding whitespace is ignored).
+	 * Malformed lines are skipped.
+	 */
+	public void read(final Reader reader) throws IOException {
+		final BufferedReader in = new BufferedReader(reader, 1<<16);
+		try {
+			String line;
+			while ((line = in.readLine())!=null) {
+				line = line.trim();
+				final int space = lastWhitespace(line);
+				if (space<=0) {
+					continue;
+				}
+				final long count;
+				try {
+					count = Long.parseLong(line.substring(space+1));
+				} catch (final NumberFormatException ex) {
+					continue;
+				}
+				source.addStack(line.substring(0, space).trim().split(";"), count);
+			}
+		} finally {
+			in.close();
+			source.finish();
+		}
+	}
+	
+	/**
+	 * Get the index of the last whitespace character in the given string (-1 if there is none).
+	 */
+	private static int lastWhitespace(final String line) {
+		int i = line.length()-1;
+		while (i>=0 && !Character.isWhitespace(line.charAt(i))) {
+			i--;
+		}
+		return i;
+	}
+	
+}
@@ -0,0 +1,170 @@
+/*
+ * This file is licensed to You under the "Simplified BSD License".
+ * You may not use this software except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.opensource.org/licenses/bsd-license.php
+ *
+ * See the COPYRIGHT file distributed with this work for information
+ * regarding copyright ownership.
+ */
+package ch.usi.inf.sape.trevis.swing.source;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import ch.usi.inf.sape.trevis.model.ContextTreeNode;
+
+
+/**
+ * A node of a LazyTreeSource.
+ * 
+ * As long as the children of a node with children have not been loaded 
+ * (or after they got evicted), the node has a single placeholder child,
+ * which carries the values of the node itself (it stands for all of its children).
+ * If loading the children failed, the placeholder says so (in its label), and stays.
+ * The children may get loaded or evicted while the tree is being traversed;
+ * a traversal then sees either the loaded children or the placeholder.
+ */
+public final class LazyNode implements ContextTreeNode {
+
+	private static final String PLACEHOLDER_LABEL = "Loading...";
+	private static final String FAILED_LABEL = "Failed to load";
+	
+	private final LazyNode parent;
+	private final long id; // -1 for a placeholder
+	private final String label;
+	private final int childCount;
+	private final long[] values;
+	private volatile LazyNode[] children; // null if not loaded
+	private LazyNode placeholder; // created when first needed
+	private boolean requested; // loading has been requested, guarded by the LazyTreeSource
+	private volatile boolean failed; // loading the children failed
+	
+	
+	LazyNode(final LazyNode parent, final NodeRecord record) {
+		this(parent, record.getId(), record.getLabel(), record.getChildCount(), record.getValues());
+	}
+	
+	private LazyNode(final LazyNode parent, final long id, final String label, final int childCount, final long[] values) {
+		this.parent = parent;
+		this.id = id;
+		this.label = label;
+		this.childCount = childCount;
+		this.values = values;
+	}
+	
+	
+	//--- loading
+	public long getId() {
+		return id;
+	}
+	
+	public boolean isPlaceholder() {
+		return id<0;
+	}
+	
+	public boolean isLoaded() {
+		return childCount==0 || children!=null;
+	}
+	
+	/**
+	 * Get the value in the given column of the NodeRecord of this node.
+	 */
+	public long getValue(final int column) {
+		return values[column];
+	}
+	
+	void setChildren(final LazyNode[] children) {
+		this.children = children;
+	}
+	
+	boolean isRequested() {
+		return requested;
+	}
+	
+	void setRequested(final boolean requested) {
+		this.requested = requested;
+	}
+	
+	/**
+	 * Did loading the children of this node fail?
+	 */
+	public boolean isFailed() {
+		return failed;
+	}
+	
+	void setFailed(final boolean failed) {
+		this.failed = failed;
+	}
+	
+	private synchronized LazyNode getPlaceholder() {
+		if (placeholder==null) {
+			placeholder = new LazyNode(this, -1, PLACEHOLDER_LABEL, 0, values);
+		}
+		return placeholder;
+	}
+	
+	
+	//--- ContextTreeNode
+	public ContextTreeNode getParent() {
+		return parent;
+	}
+	
+	public boolean isRoot() {
+		return parent==null;
+	}
+	
+	public String getLabel() {
+		if (isPlaceholder() && parent.isFailed()) {
+			return FAILED_LABEL;
+		}
+		return label;
+	}
+	
+	public int getChildCount() {
+		if (childCount==0) {
+			return 0;
+		}
+		final LazyNode[] children = this.children;
+		return children==null?1:children.length;
+	}
+	
+	public ContextTreeNode getChild(final int index) {
+		final LazyNode[] children = this.children;
+		if (children!=null && index<children.length) {
+			return children[index];
+		} else {
+			// not loaded, or evicted since getChildCount()
+			return getPlaceholder();
+		}
+	}
+	
+	public Iterator<ContextTreeNode> iterator() {
+		return new Iterator<ContextTreeNode>() {
+			private final int count = getChildCount();
+			private int index;
+			
+			public boolean hasNext() {
+				return index<count;
+			}
+			
+			public ContextTreeNode next() {
+				if (index>=count) {
+					throw new NoSuchElementException();
+				}
+				return getChild(index++);
+			}
+			
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+	
+	@Override
+	public String toString() {
+		return label;
+	}
+	
+}
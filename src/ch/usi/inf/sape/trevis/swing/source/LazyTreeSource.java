@@ -0,0 +1,212 @@
+/*
+ * This file is licensed to You under the "Simplified BSD License".
+ * You may not use this software except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.opensource.org/licenses/bsd-license.php
+ *
+ * See the COPYRIGHT file distributed with this work for information
+ * regarding copyright ownership.
+ */
+package ch.usi.inf.sape.trevis.swing.source;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+import javax.swing.SwingUtilities;
+
+import ch.usi.inf.sape.trevis.model.ContextTree;
+import ch.usi.inf.sape.trevis.model.ContextTreeNode;
+import ch.usi.inf.sape.trevis.model.attribute.LongAttribute;
+import ch.usi.inf.sape.trevis.swing.DaemonThreadFactory;
+import ch.usi.inf.sape.trevis.swing.RenderPlan;
+
+
+/**
+ * A TreeSource for trees too big to be materialized:
+ * it only loads (through a ChildLoader) the children of nodes that are shown.
+ * 
+ * Children get loaded on a background thread, and installed on the event dispatch thread.
+ * If loading fails (the ChildLoader throws), the node keeps its placeholder, marked as failed,
+ * the listeners get notified (loadFailed()), and loading does not get retried.
+ * The children of at most maxLoadedNodes nodes are kept.
+ * When more have been loaded, the children of the node least recently shown get evicted
+ * (and will get loaded again if the node gets shown again).
+ * 
+ * The values of the nodes are available as ColumnAttributes (one per column of the loader),
+ * the first of which is the one to size nodes by (see getAttributes()).
+ * Size the nodes by an inclusive column (e.g., total samples), not by their leaf count:
+ * a placeholder is a single leaf, no matter how big the subtree it stands for.
+ */
+public final class LazyTreeSource implements TreeSource {
+
+	public static final int DEFAULT_MAX_LOADED_NODES = 100000;
+	
+	private static final Executor EXECUTOR = Executors.newSingleThreadExecutor(new DaemonThreadFactory("TreeSource loader")); // shared by all LazyTreeSources
+	
+	private final ChildLoader loader;
+	private final LazyNode root;
+	private final List<LongAttribute> attributes; // one ColumnAttribute per column of the loader
+	private final LinkedHashMap<LazyNode, LazyNode> loaded; // nodes with loaded children, least recently shown first; guarded by this
+	private final CopyOnWriteArrayList<TreeSourceListener> listeners;
+	
+	
+	public LazyTreeSource(final ChildLoader loader) throws IOException {
+		this(loader, DEFAULT_MAX_LOADED_NODES);
+	}
+	
+	public LazyTreeSource(final ChildLoader loader, final int maxLoadedNodes) throws IOException {
+		this.loader = loader;
+		root = new LazyNode(null, loader.loadRoot());
+		final ArrayList<LongAttribute> columns = new ArrayList<LongAttribute>();
+		for (int c=0; c<loader.getColumnCount(); c++) {
+			columns.add(new ColumnAttribute(loader.getColumnName(c), c));
+		}
+		attributes = Collections.unmodifiableList(columns);
+		loaded = new LinkedHashMap<LazyNode, LazyNode>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(final Map.Entry<LazyNode, LazyNode> eldest) {
+				if (size()>maxLoadedNodes) {
+					eldest.getKey().setChildren(null);
+					return true;
+				} else {
+					return false;
+				}
+			}
+		};
+		listeners = new CopyOnWriteArrayList<TreeSourceListener>();
+	}
+	
+	public ContextTree getTree() {
+		return null;
+	}
+	
+	public ContextTreeNode getRoot() {
+		return root;
+	}
+	
+	public List<LongAttribute> getAttributes() {
+		return attributes;
+	}
+	
+	/**
+	 * Get the attribute for the column with the given name (null if there is none).
+	 */
+	public ColumnAttribute getColumnAttribute(final String name) {
+		for (final LongAttribute attribute : attributes) {
+			if (attribute.getName().equals(name)) {
+				return (ColumnAttribute)attribute;
+			}
+		}
+		return null;
+	}
+	
+	public TreeVersion getLatestVersion() {
+		return null;
+	}
+	
+	public boolean isPlaceholder(final ContextTreeNode node) {
+		return node instanceof LazyNode && ((LazyNode)node).isPlaceholder();
+	}
+	
+	public boolean isLoadFailed(final ContextTreeNode node) {
+		return isPlaceholder(node) && ((LazyNode)node.getParent()).isFailed();
+	}
+	
+	public synchronized void prepare(final RenderPlan plan) {
+		// keep the path to top
+		for (ContextTreeNode node = plan.getTop(); node!=null; node = node.getParent()) {
+			touch(node);
+		}
+		for (int entry=0; entry<plan.size(); entry++) {
+			final ContextTreeNode node = plan.getNode(entry);
+			if (isPlaceholder(node)) {
+				request((LazyNode)node.getParent());
+			} else {
+				touch(node);
+				if (plan.isChain(entry)) {
+					for (ContextTreeNode n = plan.getChainEnd(entry); n!=node; n = n.getParent()) {
+						touch(n);
+					}
+				}
+			}
+		}
+	}
+	
+	private void touch(final ContextTreeNode node) {
+		if (node instanceof LazyNode) {
+			loaded.get(node);
+		}
+	}
+	
+	private void request(final LazyNode node) {
+		if (node.isRequested() || node.isLoaded() || node.isFailed()) {
+			return;
+		}
+		node.setRequested(true);
+		EXECUTOR.execute(new Runnable() {
+			public void run() {
+				try {
+					final NodeRecord[] records = loader.loadChildren(node.getId());
+					final LazyNode[] children = new LazyNode[records.length];
+					for (int i=0; i<records.length; i++) {
+						children[i] = new LazyNode(node, records[i]);
+					}
+					SwingUtilities.invokeLater(new Runnable() {
+						public void run() {
+							install(node, children);
+						}
+					});
+				} catch (final IOException ex) {
+					failed(node, ex);
+				} catch (final RuntimeException ex) {
+					failed(node, ex);
+				}
+			}
+		});
+	}
+	
+	private void install(final LazyNode node, final LazyNode[] children) {
+		synchronized (this) {
+			node.setChildren(children);
+			node.setRequested(false);
+			loaded.put(node, node);
+		}
+		for (final TreeSourceListener li : listeners) {
+			li.childrenLoaded(this, node);
+		}
+	}
+	
+	/**
+	 * Keep the placeholder (marked as failed), and do not try again.
+	 */
+	private void failed(final LazyNode node, final Exception exception) {
+		SwingUtilities.invokeLater(new Runnable() {
+			public void run() {
+				synchronized (LazyTreeSource.this) {
+					node.setFailed(true);
+					node.setRequested(false);
+				}
+				for (final TreeSourceListener li : listeners) {
+					li.loadFailed(LazyTreeSource.this, node, exception);
+				}
+			}
+		});
+	}
+	
+	public void addTreeSourceListener(final TreeSourceListener li) {
+		listeners.add(li);
+	}
+	
+	public void removeTreeSourceListener(final TreeSourceListener li) {
+		listeners.remove(li);
+	}
+	
+}
@@ -0,0 +1,241 @@
+/*
+ * This file is licensed to You under the "Simplified BSD License".
+ * You may not use this software except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.opensource.org/licenses/bsd-license.php
+ *
+ * See the COPYRIGHT file distributed with this work for information
+ * regarding copyright ownership.
+ */
+package ch.usi.inf.sape.trevis.swing.source;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+
+
+/**
+ * A tree snapshot (written by TreeSnapshotWriter), memory-mapped from its file.
+ * 
+ * Opening a snapshot only reads its header: the data stays in the file (and the OS page cache), 
+ * and gets read when accessed, so opening is fast, and the data does not take space on the Java heap.
+ * Nodes are identified by their preorder index (0 is the root).
+ * A MappedTreeSnapshot is a ChildLoader, so it can be shown with a LazyTreeSource
+ * (the NodeRecords carry the values of all columns, available as ColumnAttributes by column name,
+ * and the first column sizes the nodes, so write the snapshot with an inclusive attribute first):
+ * <pre>
+ * view.setSource(new LazyTreeSource(new MappedTreeSnapshot(file)));
+ * </pre>
+ * 
+ * Layout of the file (big-endian):
+ * <pre>
+ * header:     int magic, int version, int nodeCount, int columnCount, int labelCount, long labelBytes,
+ *             columnCount * (int length, UTF-8 bytes of the column name)
+ * topology:   int[nodeCount] subtree sizes (number of nodes, including the node itself),
+ *             int[nodeCount] child counts,
+ *             int[nodeCount] label ids
+ * columns:    columnCount * long[nodeCount] values
+ * labels:     long[labelCount+1] offsets into the label bytes, labelBytes UTF-8 bytes
+ * </pre>
+ * The first child of node i is node i+1, and the next sibling of node i is node i+subtreeSize(i).
+ * Each section gets mapped separately, so a snapshot can have up to 2^28-1 nodes.
+ */
+public final class MappedTreeSnapshot implements ChildLoader {
+
+	static final int MAGIC = 0x54525653; // "TRVS"
+	static final int VERSION = 1;
+	
+	private final RandomAccessFile file;
+	private final int nodeCount;
+	private final String[] columnNames;
+	private final IntBuffer subtreeSizes;
+	private final IntBuffer childCounts;
+	private final IntBuffer labelIds;
+	private final LongBuffer[] columns;
+	private final LongBuffer labelOffsets;
+	private final ByteBuffer labelBytes;
+	private final String[] labels; // decoded when first needed
+	
+	
+	public MappedTreeSnapshot(final File file) throws IOException {
+		final DataInputStream in = new DataInputStream(new FileInputStream(file));
+		final int columnCount;
+		final int labelCount;
+		final long labelBytesLength;
+		long offset;
+		try {
+			if (in.readInt()!=MAGIC) {
+				throw new IOException(file+" is not a tree snapshot");
+			}
+			final int version = in.readInt();
+			if (version!=VERSION) {
+				throw new IOException(file+" has unsupported snapshot version "+version);
+			}
+			nodeCount = in.readInt();
+			columnCount = in.readInt();
+			labelCount = in.readInt();
+			labelBytesLength = in.readLong();
+			if (nodeCount<0 || columnCount<0 || labelCount<0 || labelBytesLength<0) {
+				throw new IOException(file+" is corrupt (negative counts in header)");
+			}
+			offset = 5*4+8;
+			columnNames = new String[columnCount];
+			for (int c=0; c<columnCount; c++) {
+				final int nameLength = in.readInt();
+				if (nameLength<0) {
+					throw new IOException(file+" is corrupt (negative column name length)");
+				}
+				final byte[] name = new byte[nameLength];
+				in.readFully(name);
+				columnNames[c] = new String(name, "UTF-8");
+				offset += 4+name.length;
+			}
+		} finally {
+			in.close();
+		}
+		this.file = new RandomAccessFile(file, "r");
+		boolean mapped = false;
+		try {
+			final FileChannel channel = this.file.getChannel();
+			subtreeSizes = map(channel, offset, 4L*nodeCount).asIntBuffer();
+			offset += 4L*nodeCount;
+			childCounts = map(channel, offset, 4L*nodeCount).asIntBuffer();
+			offset += 4L*nodeCount;
+			labelIds = map(channel, offset, 4L*nodeCount).asIntBuffer();
+			offset += 4L*nodeCount;
+			columns = new LongBuffer[columnCount];
+			for (int c=0; c<columnCount; c++) {
+				columns[c] = map(channel, offset, 8L*nodeCount).asLongBuffer();
+				offset += 8L*nodeCount;
+			}
+			labelOffsets = map(channel, offset, 8L*(labelCount+1)).asLongBuffer();
+			offset += 8L*(labelCount+1);
+			labelBytes = map(channel, offset, labelBytesLength);
+			labels = new String[labelCount];
+			mapped = true;
+		} finally {
+			if (!mapped) {
+				try {
+					this.file.close();
+				} catch (final IOException ex) {
+					// report the original failure
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Map the given section of the file, after checking that the file contains it
+	 * (the offset is within the file, so offset+length does not overflow).
+	 */
+	private static ByteBuffer map(final FileChannel channel, final long offset, final long length) throws IOException {
+		if (length>Integer.MAX_VALUE) {
+			throw new IOException("Snapshot section too large to be mapped ("+length+" bytes)");
+		}
+		if (offset+length>channel.size()) {
+			throw new IOException("Snapshot is truncated (section at "+offset+" with "+length+" bytes ends after the end of the file)");
+		}
+		return channel.map(FileChannel.MapMode.READ_ONLY, offset, length);
+	}
+	
+	/**
+	 * Close the file.
+	 * (The mapped sections stay valid until they get garbage collected.)
+	 */
+	public void close() throws IOException {
+		file.close();
+	}
+	
+	
+	//--- access by id
+	public int getNodeCount() {
+		return nodeCount;
+	}
+	
+	/**
+	 * Get the index of the column with the given name (-1 if there is none).
+	 */
+	public int getColumn(final String name) {
+		for (int c=0; c<columnNames.length; c++) {
+			if (columnNames[c].equals(name)) {
+				return c;
+			}
+		}
+		return -1;
+	}
+	
+	public int getColumnCount() {
+		return columnNames.length;
+	}
+	
+	public String getColumnName(final int column) {
+		return columnNames[column];
+	}
+	
+	public int getSubtreeSize(final int id) {
+		return subtreeSizes.get(id);
+	}
+	
+	public int getChildCount(final int id) {
+		return childCounts.get(id);
+	}
+	
+	public long getValue(final int column, final int id) {
+		return columns[column].get(id);
+	}
+	
+	public String getLabel(final int id) {
+		final int labelId = labelIds.get(id);
+		String label = labels[labelId];
+		if (label==null) {
+			final int start = (int)labelOffsets.get(labelId);
+			final int end = (int)labelOffsets.get(labelId+1);
+			final byte[] bytes = new byte[end-start];
+			final ByteBuffer buffer = labelBytes.duplicate(); // own position, so concurrent readers do not interfere
+			buffer.position(start);
+			buffer.get(bytes);
+			try {
+				label = new String(bytes, "UTF-8");
+			} catch (final UnsupportedEncodingException ex) {
+				throw new Error(ex);
+			}
+			// racy, but all threads decode the same String
+			labels[labelId] = label;
+		}
+		return label;
+	}
+	
+	
+	//--- ChildLoader
+	public NodeRecord loadRoot() throws IOException {
+		return getRecord(0);
+	}
+	
+	public NodeRecord[] loadChildren(final long id) throws IOException {
+		final int parent = (int)id;
+		final NodeRecord[] children = new NodeRecord[getChildCount(parent)];
+		int child = parent+1;
+		for (int c=0; c<children.length; c++) {
+			children[c] = getRecord(child);
+			child += getSubtreeSize(child);
+		}
+		return children;
+	}
+	
+	private NodeRecord getRecord(final int id) {
+		final long[] values = new long[columns.length];
+		for (int c=0; c<columns.length; c++) {
+			values[c] = columns[c].get(id);
+		}
+		return new NodeRecord(id, getLabel(id), getChildCount(id), values);
+	}
+	
+}
@@ -0,0 +1,50 @@
+/*
+ * This file is licensed to You under the "Simplified BSD License".
+ * You may not use this software except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.opensource.org/licenses/bsd-license.php
+ *
+ * See the COPYRIGHT file distributed with this work for information
+ * regarding copyright ownership.
+ */
+package ch.usi.inf.sape.trevis.swing.source;
+
+
+/**
+ * The data of a node, as provided by a ChildLoader:
+ * the id the loader uses to find its children, its label, its number of children,
+ * and the values of its attributes (in the columns defined by the loader).
+ */
+public final class NodeRecord {
+
+	private final long id;
+	private final String label;
+	private final int childCount;
+	private final long[] values;
+	
+	
+	public NodeRecord(final long id, final String label, final int childCount, final long[] values) {
+		this.id = id;
+		this.label = label;
+		this.childCount = childCount;
+		this.values = values;
+	}
+	
+	public long getId() {
+		return id;
+	}
+	
+	public String getLabel() {
+		return label;
+	}
+	
+	public int getChildCount() {
+		return childCount;
+	}
+	
+	public long[] getValues() {
+		return values;
+	}
+	
+}
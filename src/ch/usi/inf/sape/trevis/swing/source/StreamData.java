@@ -0,0 +1,35 @@
+/*
+ * This file is licensed to You under the "Simplified BSD License".
+ * You may not use this software except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.opensource.org/licenses/bsd-license.php
+ *
+ * See the COPYRIGHT file distributed with this work for information
+ * regarding copyright ownership.
+ */
+package ch.usi.inf.sape.trevis.swing.source;
+
+
+/**
+ * The immutable data of a node in the snapshots of a StreamingTreeSource.
+ * 
+ * A StreamData gets created once per version of the node:
+ * subtrees that did not change between two snapshots share the same StreamData objects.
+ */
+final class StreamData {
+
+	final String label;
+	final long selfCount;
+	final long totalCount;
+	final StreamData[] children;
+	
+	
+	public StreamData(final String label, final long selfCount, final long totalCount, final StreamData[] children) {
+		this.label = label;
+		this.selfCount = selfCount;
+		this.totalCount = totalCount;
+		this.children = children;
+	}
+	
+}
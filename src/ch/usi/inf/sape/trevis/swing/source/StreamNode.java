@@ -0,0 +1,114 @@
+/*
+ * This file is licensed to You under the "Simplified BSD License".
+ * You may not use this software except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.opensource.org/licenses/bsd-license.php
+ *
+ * See the COPYRIGHT file distributed with this work for information
+ * regarding copyright ownership.
+ */
+package ch.usi.inf.sape.trevis.swing.source;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import ch.usi.inf.sape.trevis.model.ContextTreeNode;
+
+
+/**
+ * A node of a snapshot published by a StreamingTreeSource.
+ * 
+ * Snapshots are immutable, and share the data of unchanged subtrees (StreamData).
+ * A StreamNode adds the position of that data within one snapshot (its parent);
+ * the StreamNodes of a snapshot get created when first visited, 
+ * and each position has exactly one StreamNode per snapshot, so they can be compared by identity.
+ * 
+ * The self count of a node is the number of samples ending in that node,
+ * the total count the number of samples passing through it (including the ones ending in it).
+ */
+public final class StreamNode implements ContextTreeNode {
+
+	private final StreamNode parent;
+	private final StreamData data;
+	private final StreamNode[] children; // created when first needed
+	
+	
+	StreamNode(final StreamNode parent, final StreamData data) {
+		this.parent = parent;
+		this.data = data;
+		children = new StreamNode[data.children.length];
+	}
+	
+	StreamData getData() {
+		return data;
+	}
+	
+	public long getSelfCount() {
+		return data.selfCount;
+	}
+	
+	public long getTotalCount() {
+		return data.totalCount;
+	}
+	
+	
+	//--- ContextTreeNode
+	public ContextTreeNode getParent() {
+		return parent;
+	}
+	
+	public boolean isRoot() {
+		return parent==null;
+	}
+	
+	public String getLabel() {
+		return data.label;
+	}
+	
+	public int getChildCount() {
+		return children.length;
+	}
+	
+	public ContextTreeNode getChild(final int index) {
+		// all fields of a StreamNode are final, so reading a child created by another thread without locking is safe
+		StreamNode child = children[index];
+		if (child==null) {
+			synchronized (this) {
+				child = children[index];
+				if (child==null) {
+					child = new StreamNode(this, data.children[index]);
+					children[index] = child;
+				}
+			}
+		}
+		return child;
+	}
+	
+	public Iterator<ContextTreeNode> iterator() {
+		return new Iterator<ContextTreeNode>() {
+			private int index;
+			
+			public boolean hasNext() {
+				return index<children.length;
+			}
+			
+			public ContextTreeNode next() {
+				if (index>=children.length) {
+					throw new NoSuchElementException();
+				}
+				return getChild(index++);
+			}
+			
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+	
+	@Override
+	public String toString() {
+		return data.label;
+	}
+	
+}
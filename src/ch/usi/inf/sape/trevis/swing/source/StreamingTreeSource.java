@@ -0,0 +1,349 @@
+/*
+ * This file is licensed to You under the "Simplified BSD License".
+ * You may not use this software except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.opensource.org/licenses/bsd-license.php
+ *
+ * See the COPYRIGHT file distributed with this work for information
+ * regarding copyright ownership.
+ */
+package ch.usi.inf.sape.trevis.swing.source;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.swing.SwingUtilities;
+
+import ch.usi.inf.sape.trevis.model.ContextTree;
+import ch.usi.inf.sape.trevis.model.ContextTreeNode;
+import ch.usi.inf.sape.trevis.model.attribute.LongAttribute;
+import ch.usi.inf.sape.trevis.swing.DaemonThreadFactory;
+import ch.usi.inf.sape.trevis.swing.RenderPlan;
+
+
+/**
+ * A TreeSource for a tree that keeps growing while it is shown,
+ * e.g., fed by a FoldedStacksReader parsing a file, or by a running profiler.
+ * 
+ * Writers add stacks (on any thread), which get merged into a mutable tree 
+ * (by label, so siblings have distinct labels).
+ * Periodically (every publishInterval milliseconds, on a background thread),
+ * if stacks have been added, an immutable snapshot of that tree gets published as a new TreeVersion,
+ * through an AtomicReference, so readers never lock.
+ * Snapshots are structurally shared: only the nodes on the paths to the changes get copied,
+ * so publishing costs time proportional to the changes, not to the size of the tree.
+ * 
+ * The TreeView showing the source picks up the newest version at the start of each frame,
+ * keeping its zoom (top) and hover (current) state.
+ * 
+ * The sample counts of the nodes are available as the attributes TOTAL_SAMPLES (which sizes the nodes)
+ * and SELF_SAMPLES (see getAttributes()).
+ * 
+ * Publishing runs on a scheduler shared by all StreamingTreeSources, which keeps a reference to the source
+ * until it is finished (finish()) or closed (close()).
+ * The owner of a source that may stop being shown before it is finished (e.g., a live profile) 
+ * has to close it, otherwise it keeps being published for the life of the JVM.
+ */
+public final class StreamingTreeSource implements TreeSource {
+
+	public static final int DEFAULT_PUBLISH_INTERVAL = 500; // milliseconds
+	
+	/**
+	 * The number of samples of a StreamNode including the ones of its descendants (0 for other nodes).
+	 */
+	public static final LongAttribute TOTAL_SAMPLES = new SampleAttribute("Total samples", true);
+	
+	/**
+	 * The number of samples of a StreamNode itself (0 for other nodes).
+	 */
+	public static final LongAttribute SELF_SAMPLES = new SampleAttribute("Self samples", false);
+	
+	private static final ScheduledExecutorService EXECUTOR = Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory("StreamingTreeSource publisher")); // shared by all StreamingTreeSources
+	
+	private static final class SampleAttribute extends LongAttribute {
+		private final String name;
+		private final boolean total;
+		
+		public SampleAttribute(final String name, final boolean total) {
+			this.name = name;
+			this.total = total;
+		}
+		
+		@Override
+		public String getName() {
+			return name;
+		}
+		
+		@Override
+		public String getDescription() {
+			return total?"Number of samples in the subtree":"Number of samples in the node itself";
+		}
+		
+		@Override
+		public long evaluate(final ContextTreeNode node) {
+			if (!(node instanceof StreamNode)) {
+				return 0;
+			}
+			return total?((StreamNode)node).getTotalCount():((StreamNode)node).getSelfCount();
+		}
+	}
+	
+	/**
+	 * A node of the tree being built (guarded by the lock of the StreamingTreeSource).
+	 */
+	private static final class MutableNode {
+		private final String label;
+		private final ArrayList<MutableNode> children;
+		private final HashMap<String, MutableNode> childrenByLabel;
+		private long selfCount;
+		private long totalCount;
+		private boolean changed; // since the last snapshot
+		private StreamData data; // in the last snapshot, null if not published yet
+		
+		public MutableNode(final String label) {
+			this.label = label;
+			children = new ArrayList<MutableNode>();
+			childrenByLabel = new HashMap<String, MutableNode>();
+			changed = true;
+		}
+		
+		public MutableNode getOrAddChild(final String label) {
+			MutableNode child = childrenByLabel.get(label);
+			if (child==null) {
+				child = new MutableNode(label);
+				children.add(child);
+				childrenByLabel.put(label, child);
+			}
+			return child;
+		}
+	}
+	
+	private final Object lock;
+	private final MutableNode root; // guarded by lock
+	private final AtomicReference<TreeVersion> latest;
+	private final ScheduledFuture<?> publisher;
+	private final CopyOnWriteArrayList<TreeSourceListener> listeners;
+	private volatile Exception failure; // null if reading the stacks did not fail
+	
+	
+	public StreamingTreeSource(final String rootLabel) {
+		this(rootLabel, DEFAULT_PUBLISH_INTERVAL);
+	}
+	
+	public StreamingTreeSource(final String rootLabel, final int publishInterval) {
+		lock = new Object();
+		root = new MutableNode(rootLabel);
+		listeners = new CopyOnWriteArrayList<TreeSourceListener>();
+		final StreamData empty = new StreamData(rootLabel, 0, 0, new StreamData[0]);
+		latest = new AtomicReference<TreeVersion>(new TreeVersion(0, new StreamNode(null, empty), Collections.<ContextTreeNode>emptyList()));
+		publisher = EXECUTOR.scheduleWithFixedDelay(new Runnable() {
+			public void run() {
+				publish();
+			}
+		}, publishInterval, publishInterval, TimeUnit.MILLISECONDS);
+	}
+	
+	
+	//--- writer side (any thread)
+	/**
+	 * Add count samples of the given stack (outermost frame first).
+	 */
+	public void addStack(final String[] frames, final long count) {
+		synchronized (lock) {
+			MutableNode node = root;
+			node.totalCount += count;
+			node.changed = true;
+			for (final String frame : frames) {
+				node = node.getOrAddChild(frame);
+				node.totalCount += count;
+				node.changed = true;
+			}
+			node.selfCount += count;
+		}
+	}
+	
+	/**
+	 * Signal that no more stacks will be added:
+	 * publish the last version, and stop publishing.
+	 */
+	public void finish() {
+		publisher.cancel(false);
+		EXECUTOR.execute(new Runnable() {
+			public void run() {
+				publish();
+			}
+		});
+	}
+	
+	
+	/**
+	 * Signal that reading the stacks failed (so the tree may be incomplete):
+	 * notify the listeners (on the event dispatch thread), with the root as the node that failed to load.
+	 * This does not finish the source.
+	 */
+	public void fail(final Exception exception) {
+		failure = exception;
+		SwingUtilities.invokeLater(new Runnable() {
+			public void run() {
+				for (final TreeSourceListener li : listeners) {
+					li.loadFailed(StreamingTreeSource.this, getRoot(), exception);
+				}
+			}
+		});
+	}
+	
+	/**
+	 * Get the exception passed to fail(), or null if reading the stacks did not fail.
+	 */
+	public Exception getFailure() {
+		return failure;
+	}
+	
+	/**
+	 * Stop publishing (without publishing the stacks added since the last version), 
+	 * and drop the listeners, so the source can be garbage collected.
+	 * Call this when the source is not shown anymore.
+	 */
+	public void close() {
+		publisher.cancel(false);
+		listeners.clear();
+	}
+	
+	
+	//--- publication (publisher thread)
+	private void publish() {
+		final StreamData data;
+		synchronized (lock) {
+			if (!root.changed) {
+				return;
+			}
+			data = update();
+		}
+		final TreeVersion previous = latest.get();
+		final StreamNode newRoot = new StreamNode(null, data);
+		final TreeVersion version = new TreeVersion(previous.getNumber()+1, newRoot, findChanges(newRoot, ((StreamNode)previous.getRoot()).getData()));
+		latest.set(version);
+		for (final TreeSourceListener li : listeners) {
+			li.versionPublished(this);
+		}
+	}
+	
+	/**
+	 * Create new StreamData for the changed nodes (bottom up), sharing the data of unchanged subtrees,
+	 * and return the data of the root.
+	 * Only visits changed nodes, with an explicit stack (so deep trees do not overflow the call stack).
+	 */
+	private StreamData update() {
+		final ArrayList<MutableNode> stack = new ArrayList<MutableNode>();
+		final ArrayList<Integer> cursors = new ArrayList<Integer>();
+		stack.add(root);
+		cursors.add(0);
+		while (!stack.isEmpty()) {
+			final int top = stack.size()-1;
+			final MutableNode node = stack.get(top);
+			int cursor = cursors.get(top);
+			while (cursor<node.children.size() && !node.children.get(cursor).changed) {
+				cursor++;
+			}
+			if (cursor<node.children.size()) {
+				cursors.set(top, cursor+1);
+				stack.add(node.children.get(cursor));
+				cursors.add(0);
+			} else {
+				stack.remove(top);
+				cursors.remove(top);
+				final StreamData[] children = new StreamData[node.children.size()];
+				for (int c=0; c<children.length; c++) {
+					children[c] = node.children.get(c).data;
+				}
+				node.data = new StreamData(node.label, node.selfCount, node.totalCount, children);
+				node.changed = false;
+			}
+		}
+		return root.data;
+	}
+	
+	/**
+	 * Find the nodes of the new snapshot whose data is not shared with the previous snapshot.
+	 */
+	private static List<ContextTreeNode> findChanges(final StreamNode newRoot, final StreamData previousRoot) {
+		final ArrayList<ContextTreeNode> changes = new ArrayList<ContextTreeNode>();
+		final ArrayList<StreamNode> nodes = new ArrayList<StreamNode>();
+		final ArrayList<StreamData> previous = new ArrayList<StreamData>(); // the data at the same position in the previous snapshot, or null
+		changes.add(newRoot);
+		nodes.add(newRoot);
+		previous.add(previousRoot);
+		while (!nodes.isEmpty()) {
+			final StreamNode node = nodes.remove(nodes.size()-1);
+			final StreamData previousData = previous.remove(previous.size()-1);
+			final StreamData[] children = node.getData().children;
+			for (int c=0; c<children.length; c++) {
+				final StreamData previousChild = (previousData!=null && c<previousData.children.length)?previousData.children[c]:null;
+				if (children[c]!=previousChild) {
+					final StreamNode child = (StreamNode)node.getChild(c);
+					changes.add(child);
+					nodes.add(child);
+					previous.add(previousChild);
+				}
+			}
+		}
+		return changes;
+	}
+	
+	
+	//--- TreeSource
+	public ContextTree getTree() {
+		return null;
+	}
+	
+	/**
+	 * Get the root of the latest version.
+	 */
+	public ContextTreeNode getRoot() {
+		return latest.get().getRoot();
+	}
+	
+	/**
+	 * Get TOTAL_SAMPLES (to size the nodes by) and SELF_SAMPLES.
+	 */
+	public List<LongAttribute> getAttributes() {
+		return Arrays.asList(TOTAL_SAMPLES, SELF_SAMPLES);
+	}
+	
+	public TreeVersion getLatestVersion() {
+		return latest.get();
+	}
+	
+	public boolean isPlaceholder(final ContextTreeNode node) {
+		return false;
+	}
+	
+	/**
+	 * Only the root counts as failed (see fail()).
+	 */
+	public boolean isLoadFailed(final ContextTreeNode node) {
+		return failure!=null && node.isRoot();
+	}
+	
+	public void prepare(final RenderPlan plan) {
+	}
+	
+	public void addTreeSourceListener(final TreeSourceListener li) {
+		listeners.add(li);
+	}
+	
+	public void removeTreeSourceListener(final TreeSourceListener li) {
+		listeners.remove(li);
+	}
+	
+}
@@ -0,0 +1,198 @@
+/*
+ * This file is licensed to You under the "Simplified BSD License".
+ * You may not use this software except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.opensource.org/licenses/bsd-license.php
+ *
+ * See the COPYRIGHT file distributed with this work for information
+ * regarding copyright ownership.
+ */
+package ch.usi.inf.sape.trevis.swing.source;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import ch.usi.inf.sape.trevis.model.ContextTreeNode;
+import ch.usi.inf.sape.trevis.model.attribute.LongAttribute;
+
+
+/**
+ * Writes a tree into a snapshot file, to be opened with MappedTreeSnapshot.
+ * 
+ * The snapshot contains the topology of the tree (in preorder),
+ * the labels of the nodes (interned, so each distinct label is stored once),
+ * and one column per given LongAttribute, with the value of that attribute for every node.
+ * See MappedTreeSnapshot for the layout of the file.
+ */
+public final class TreeSnapshotWriter {
+
+	private static final int INITIAL_CAPACITY = 1024;
+	
+	private final LongAttribute[] columns;
+	
+	// the nodes written so far, in preorder
+	private int count;
+	private int[] subtreeSizes;
+	private int[] childCounts;
+	private int[] labelIds;
+	private long[][] values; // [column][node]
+	private HashMap<String, Integer> labelIdsByLabel;
+	private ArrayList<String> labels;
+	
+	
+	/**
+	 * The first column sizes the nodes of a LazyTreeSource over the snapshot (see ColumnAttribute),
+	 * so it should be an inclusive attribute (e.g., total samples).
+	 */
+	public TreeSnapshotWriter(final LongAttribute[] columns) {
+		this.columns = columns;
+	}
+	
+	/**
+	 * Write the tree rooted at the given node into the given file.
+	 */
+	public void write(final ContextTreeNode root, final File file) throws IOException {
+		collect(root);
+		final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1<<16));
+		try {
+			final byte[][] labelBytes = new byte[labels.size()][];
+			long labelBytesLength = 0;
+			for (int l=0; l<labelBytes.length; l++) {
+				labelBytes[l] = labels.get(l).getBytes("UTF-8");
+				labelBytesLength += labelBytes[l].length;
+			}
+			// header
+			out.writeInt(MappedTreeSnapshot.MAGIC);
+			out.writeInt(MappedTreeSnapshot.VERSION);
+			out.writeInt(count);
+			out.writeInt(columns.length);
+			out.writeInt(labelBytes.length);
+			out.writeLong(labelBytesLength);
+			for (final LongAttribute column : columns) {
+				final byte[] name = column.getName().getBytes("UTF-8");
+				out.writeInt(name.length);
+				out.write(name);
+			}
+			// topology
+			writeInts(out, subtreeSizes);
+			writeInts(out, childCounts);
+			writeInts(out, labelIds);
+			// attribute columns
+			for (int c=0; c<columns.length; c++) {
+				for (int i=0; i<count; i++) {
+					out.writeLong(values[c][i]);
+				}
+			}
+			// label table
+			long offset = 0;
+			for (int l=0; l<labelBytes.length; l++) {
+				out.writeLong(offset);
+				offset += labelBytes[l].length;
+			}
+			out.writeLong(offset);
+			for (int l=0; l<labelBytes.length; l++) {
+				out.write(labelBytes[l]);
+			}
+		} finally {
+			out.close();
+			// only needed while writing
+			subtreeSizes = null;
+			childCounts = null;
+			labelIds = null;
+			values = null;
+			labelIdsByLabel = null;
+			labels = null;
+		}
+	}
+	
+	private void writeInts(final DataOutputStream out, final int[] a) throws IOException {
+		for (int i=0; i<count; i++) {
+			out.writeInt(a[i]);
+		}
+	}
+	
+	/**
+	 * Collect the topology, labels, and values of the tree, in preorder.
+	 * Uses an explicit stack, so the depth of the tree is not limited by the depth of the call stack.
+	 */
+	private void collect(final ContextTreeNode root) {
+		count = 0;
+		subtreeSizes = new int[INITIAL_CAPACITY];
+		childCounts = new int[INITIAL_CAPACITY];
+		labelIds = new int[INITIAL_CAPACITY];
+		values = new long[columns.length][INITIAL_CAPACITY];
+		labelIdsByLabel = new HashMap<String, Integer>();
+		labels = new ArrayList<String>();
+		ContextTreeNode[] nodes = new ContextTreeNode[INITIAL_CAPACITY]; // the path to the current node
+		int[] indices = new int[INITIAL_CAPACITY]; // preorder index of each node on the path
+		int[] cursors = new int[INITIAL_CAPACITY]; // next child to visit of each node on the path
+		int depth = 0;
+		nodes[0] = root;
+		indices[0] = add(root);
+		while (depth>=0) {
+			final ContextTreeNode node = nodes[depth];
+			if (cursors[depth]<node.getChildCount()) {
+				final ContextTreeNode child = node.getChild(cursors[depth]);
+				cursors[depth]++;
+				depth++;
+				if (depth==nodes.length) {
+					final ContextTreeNode[] newNodes = new ContextTreeNode[2*depth];
+					System.arraycopy(nodes, 0, newNodes, 0, depth);
+					nodes = newNodes;
+					indices = grow(indices, 2*depth);
+					cursors = grow(cursors, 2*depth);
+				}
+				nodes[depth] = child;
+				indices[depth] = add(child);
+				cursors[depth] = 0;
+			} else {
+				subtreeSizes[indices[depth]] = count-indices[depth];
+				nodes[depth] = null;
+				depth--;
+			}
+		}
+	}
+	
+	/**
+	 * Add the given node (without its children), and return its preorder index.
+	 */
+	private int add(final ContextTreeNode node) {
+		if (count==subtreeSizes.length) {
+			final int capacity = 2*count;
+			subtreeSizes = grow(subtreeSizes, capacity);
+			childCounts = grow(childCounts, capacity);
+			labelIds = grow(labelIds, capacity);
+			for (int c=0; c<columns.length; c++) {
+				final long[] column = new long[capacity];
+				System.arraycopy(values[c], 0, column, 0, count);
+				values[c] = column;
+			}
+		}
+		final String label = node.getLabel()==null?"":node.getLabel();
+		Integer labelId = labelIdsByLabel.get(label);
+		if (labelId==null) {
+			labelId = labels.size();
+			labelIdsByLabel.put(label, labelId);
+			labels.add(label);
+		}
+		childCounts[count] = node.getChildCount();
+		labelIds[count] = labelId;
+		for (int c=0; c<columns.length; c++) {
+			values[c][count] = columns[c].evaluate(node);
+		}
+		return count++;
+	}
+	
+	private int[] grow(final int[] a, final int capacity) {
+		final int[] b = new int[capacity];
+		System.arraycopy(a, 0, b, 0, Math.min(a.length, capacity));
+		return b;
+	}
+	
+}
@@ -0,0 +1,78 @@
+/*
+ * This file is licensed to You under the "Simplified BSD License".
+ * You may not use this software except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.opensource.org/licenses/bsd-license.php
+ *
+ * See the COPYRIGHT file distributed with this work for information
+ * regarding copyright ownership.
+ */
+package ch.usi.inf.sape.trevis.swing.source;
+
+import java.util.List;
+
+import ch.usi.inf.sape.trevis.model.ContextTree;
+import ch.usi.inf.sape.trevis.model.ContextTreeNode;
+import ch.usi.inf.sape.trevis.model.attribute.LongAttribute;
+import ch.usi.inf.sape.trevis.swing.RenderPlan;
+
+
+/**
+ * A TreeSource provides the tree shown in a TreeView (see TreeView.setSource()).
+ * 
+ * A source may provide a tree that is not completely loaded:
+ * the children of a node that have not been loaded yet are represented by a placeholder child.
+ * Whenever the TreeView built a new RenderPlan, it asks the source to prepare the nodes in the plan,
+ * so the source only has to load the children of nodes that are actually shown 
+ * (above the cutoff, within the depth horizon, and within the node budget).
+ * Once children arrive, the source notifies its TreeSourceListeners, 
+ * and the TreeView rebuilds its plan.
+ */
+public interface TreeSource {
+
+	/**
+	 * Get the ContextTree (null if the source does not provide one).
+	 */
+	public ContextTree getTree();
+	
+	public ContextTreeNode getRoot();
+	
+	/**
+	 * Get the attributes for the values the source provides (e.g., the columns of a snapshot).
+	 * The first one (if any) is the one to size the nodes by:
+	 * TreeView.setSource() makes all of them available as size and saturation attributes,
+	 * and uses the first one as the size attribute.
+	 */
+	public List<LongAttribute> getAttributes();
+	
+	/**
+	 * Get the newest version of the tree, if the tree changes over time (null otherwise).
+	 * The TreeView polls this at the start of every frame.
+	 * Must not block.
+	 */
+	public TreeVersion getLatestVersion();
+	
+	/**
+	 * Is the given node a placeholder for children that have not been loaded yet?
+	 */
+	public boolean isPlaceholder(final ContextTreeNode node);
+	
+	/**
+	 * Is the given node a placeholder for children that failed to load
+	 * (see TreeSourceListener.loadFailed())?
+	 */
+	public boolean isLoadFailed(final ContextTreeNode node);
+	
+	/**
+	 * Called (on the event dispatch thread) whenever the TreeView built a new RenderPlan.
+	 * Start loading the children the placeholders in the plan stand for,
+	 * and keep the loaded children of the nodes in the plan.
+	 * Must not block.
+	 */
+	public void prepare(final RenderPlan plan);
+	
+	public void addTreeSourceListener(final TreeSourceListener li);
+	public void removeTreeSourceListener(final TreeSourceListener li);
+	
+}
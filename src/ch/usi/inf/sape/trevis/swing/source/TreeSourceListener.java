@@ -0,0 +1,36 @@
+/*
+ * This file is licensed to You under the "Simplified BSD License".
+ * You may not use this software except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.opensource.org/licenses/bsd-license.php
+ *
+ * See the COPYRIGHT file distributed with this work for information
+ * regarding copyright ownership.
+ */
+package ch.usi.inf.sape.trevis.swing.source;
+
+import ch.usi.inf.sape.trevis.model.ContextTreeNode;
+
+
+/**
+ * A TreeSourceListener gets notified when the children of a node of a TreeSource have been loaded,
+ * or failed to load (on the event dispatch thread), 
+ * or when the source published a new version of its tree (on any thread).
+ */
+public interface TreeSourceListener {
+
+	public void childrenLoaded(final TreeSource source, final ContextTreeNode node);
+	
+	/**
+	 * Loading the children of the given node failed with the given exception.
+	 * The node keeps its placeholder, which now stands for the failure (see TreeSource.isLoadFailed()).
+	 */
+	public void loadFailed(final TreeSource source, final ContextTreeNode node, final Exception exception);
+	
+	/**
+	 * The source published a new version of its tree (see TreeSource.getLatestVersion()).
+	 */
+	public void versionPublished(final TreeSource source);
+	
+}
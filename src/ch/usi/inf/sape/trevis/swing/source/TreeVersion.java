@@ -0,0 +1,54 @@
+/*
+ * This file is licensed to You under the "Simplified BSD License".
+ * You may not use this software except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.opensource.org/licenses/bsd-license.php
+ *
+ * See the COPYRIGHT file distributed with this work for information
+ * regarding copyright ownership.
+ */
+package ch.usi.inf.sape.trevis.swing.source;
+
+import java.util.List;
+
+import ch.usi.inf.sape.trevis.model.ContextTreeNode;
+
+
+/**
+ * A version of a tree that changes over time (see TreeSource.getLatestVersion()).
+ * 
+ * Versions are numbered consecutively.
+ * From one version to the next, children only get appended, and values do not decrease.
+ * Each version knows the nodes that are new or changed since the previous version,
+ * so a TreeView that did not miss a version can update its statistics incrementally.
+ */
+public final class TreeVersion {
+
+	private final long number;
+	private final ContextTreeNode root;
+	private final List<ContextTreeNode> changedNodes;
+	
+	
+	public TreeVersion(final long number, final ContextTreeNode root, final List<ContextTreeNode> changedNodes) {
+		this.number = number;
+		this.root = root;
+		this.changedNodes = changedNodes;
+	}
+	
+	public long getNumber() {
+		return number;
+	}
+	
+	public ContextTreeNode getRoot() {
+		return root;
+	}
+	
+	/**
+	 * Get the nodes (of this version) that are new or changed since the previous version.
+	 */
+	public List<ContextTreeNode> getChangedNodes() {
+		return changedNodes;
+	}
+	
+}